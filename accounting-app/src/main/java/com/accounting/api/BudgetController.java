@@ -1,12 +1,16 @@
 package com.accounting.api;
 
 import com.accounting.model.Budget;
+import com.accounting.service.BudgetAlertService;
 import com.accounting.service.BudgetService;
 import com.accounting.service.TransactionService;
 import com.accounting.storage.StorageManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -16,15 +20,23 @@ import java.util.Map;
 @RequestMapping("/api/budgets")
 public class BudgetController {
     private final BudgetService budgetService;
+    private final ConditionalResponses conditional;
+    private final BudgetAlertService budgetAlerts;
 
-    public BudgetController(BudgetService budgetService) {
+    public BudgetController(BudgetService budgetService, ConditionalResponses conditional,
+                            BudgetAlertService budgetAlerts) {
         this.budgetService = budgetService;
+        this.conditional = conditional;
+        this.budgetAlerts = budgetAlerts;
     }
 
     @GetMapping
-    public ResponseEntity<List<Budget>> list(Authentication auth) {
+    public ResponseEntity<List<Budget>> list(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        return ResponseEntity.ok(budgetService.getBudgetsByUserId(user));
+        String etag = conditional.etag(user, "budgets", conditional.versions().budgetRevision());
+        return conditional.respond(ifNoneMatch, etag, () -> ResponseEntity.ok(budgetService.getBudgetsByUserId(user)));
     }
 
     @PostMapping
@@ -87,11 +99,39 @@ public class BudgetController {
                                                      @RequestParam int month,
                                                      Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        boolean over = budgetService.isOverBudget(user, categoryId, year, month);
-        double overAmount = budgetService.getOverBudgetAmount(user, categoryId, year, month);
-        double rate = budgetService.getBudgetUsageRate(user, categoryId, year, month);
+        BudgetService.BudgetUsage u = budgetService.evaluate(user, categoryId, year, month);
         // 返回预算使用情况：是否超额、超额金额和使用率
-        return ResponseEntity.ok(Map.of("over", over, "overAmount", overAmount, "rate", rate));
+        if (u == null) {
+            return ResponseEntity.ok(Map.of("over", false, "overAmount", 0.0, "rate", 0.0));
+        }
+        return ResponseEntity.ok(Map.of("over", u.over, "overAmount", u.overAmount, "rate", u.rate));
+    }
+
+    /**
+     * 一次返回某月全部月度预算的使用情况，页面不必逐个预算请求 /usage
+     */
+    @GetMapping("/evaluation")
+    public ResponseEntity<List<BudgetService.BudgetUsage>> evaluation(
+            @RequestParam int year,
+            @RequestParam int month,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication auth) {
+        String user = auth != null ? auth.getName() : null;
+        // 预算与交易任一变化都会改变结果
+        String etag = conditional.etag(user, "budget-evaluation", conditional.versions().transactionVersion(user),
+                conditional.versions().budgetRevision(), year, month);
+        return conditional.respond(ifNoneMatch, etag,
+                () -> ResponseEntity.ok(budgetService.evaluateMonth(user, year, month)));
+    }
+    
+    /**
+     * 预算提醒事件流（SSE）：本人的交易写入使预算越过使用率阈值时推送 budget-alert 事件
+     */
+    @GetMapping(value = "/alerts", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> alerts(Authentication auth) {
+        String user = auth != null ? auth.getName() : null;
+        if (user == null) return ResponseEntity.status(401).build();
+        return ResponseEntity.ok(budgetAlerts.subscribe(user));
     }
     
     @GetMapping("/stats/{id}")
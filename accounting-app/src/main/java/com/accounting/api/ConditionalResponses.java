@@ -0,0 +1,81 @@
+package com.accounting.api;
+
+import com.accounting.service.DataVersionService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.function.Supplier;
+
+/**
+ * 条件请求（ETag / 304）
+ * ETag 由实例标识、用户、资源、数据版本与请求参数计算，
+ * 客户端携带的 If-None-Match 与之相同时直接返回 304，不再查询数据。
+ */
+@Component
+public class ConditionalResponses {
+    private final DataVersionService dataVersions;
+
+    public ConditionalResponses(DataVersionService dataVersions) {
+        this.dataVersions = dataVersions;
+    }
+
+    public DataVersionService versions() {
+        return dataVersions;
+    }
+
+    /**
+     * 计算弱 ETag
+     */
+    public String etag(String userId, String resource, long version, Object... params) {
+        String source = dataVersions.getInstanceId() + '|' + userId + '|' + resource + '|' + version
+                + '|' + Arrays.deepToString(params);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return "W/\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            return "W/\"" + Integer.toHexString(source.hashCode()) + "\"";
+        }
+    }
+
+    /**
+     * ETag 匹配时返回 304，否则生成响应并带上 ETag
+     * 响应允许浏览器缓存，但每次使用前都需重新验证
+     */
+    public <T> ResponseEntity<T> respond(String ifNoneMatch, String etag, Supplier<ResponseEntity<T>> producer) {
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+        }
+        ResponseEntity<T> response = producer.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return response;
+        }
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .body(response.getBody());
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        String expected = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(expected)) return true;
+        }
+        return false;
+    }
+
+    // 弱比较：忽略 W/ 前缀
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
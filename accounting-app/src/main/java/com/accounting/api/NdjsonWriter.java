@@ -0,0 +1,63 @@
+package com.accounting.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * NDJSON 响应写入器
+ * 每行一个 JSON 对象，逐条写入响应输出流，不在内存中汇总结果
+ */
+final class NdjsonWriter implements Consumer<Object> {
+    static final String MEDIA_TYPE = "application/x-ndjson";
+    // 攒够这么多行就刷新一次，保证首字节尽快到达客户端
+    private static final int FLUSH_EVERY = 256;
+
+    private final ObjectMapper mapper;
+    private final OutputStream out;
+    private int pending;
+
+    private NdjsonWriter(ObjectMapper mapper, OutputStream out) {
+        this.mapper = mapper;
+        this.out = out;
+    }
+
+    /**
+     * 设置响应头并打开写入器
+     */
+    static NdjsonWriter open(HttpServletResponse response, ObjectMapper mapper) throws IOException {
+        response.setContentType(MEDIA_TYPE);
+        response.setCharacterEncoding("UTF-8");
+        return to(response.getOutputStream(), mapper);
+    }
+
+    /**
+     * 写入任意输出流（如 gzip 压缩流），响应头由调用方设置
+     */
+    static NdjsonWriter to(OutputStream out, ObjectMapper mapper) {
+        return new NdjsonWriter(mapper, new BufferedOutputStream(out, 8192));
+    }
+
+    @Override
+    public void accept(Object value) {
+        try {
+            out.write(mapper.writeValueAsBytes(value));
+            out.write('\n');
+            if (++pending >= FLUSH_EVERY) {
+                out.flush();
+                pending = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void finish() throws IOException {
+        out.flush();
+    }
+}
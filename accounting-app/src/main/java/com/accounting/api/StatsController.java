@@ -1,8 +1,10 @@
 package com.accounting.api;
 
 import com.accounting.service.StatisticService;
+import com.accounting.service.StatsCache;
 import com.accounting.service.TransactionService;
 import com.accounting.storage.StorageManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -14,56 +16,83 @@ import java.util.Map;
 @RequestMapping("/api/stats")
 public class StatsController {
     private final StatisticService statisticService;
+    private final StatsCache statsCache;
+    private final ConditionalResponses conditional;
 
-    public StatsController(StatisticService statisticService) {
+    public StatsController(StatisticService statisticService, StatsCache statsCache,
+                           ConditionalResponses conditional) {
         this.statisticService = statisticService;
+        this.statsCache = statsCache;
+        this.conditional = conditional;
     }
 
     @GetMapping("/monthly")
     public ResponseEntity<Map<String, Object>> monthly(@RequestParam(defaultValue = "12") int months,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                                        Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        Map<YearMonth, Double> expenses = statisticService.getMonthlyExpenses(user, months);
-        Map<YearMonth, Double> income = statisticService.getMonthlyIncome(user, months);
-        List<YearMonth> order = expenses.keySet().stream().sorted().toList();
-        return ResponseEntity.ok(Map.of(
-                "months", order.stream().map(ym -> ym.getYear()+"-"+String.format("%02d", ym.getMonthValue())).toList(),
-                "expenses", order.stream().map(expenses::get).toList(),
-                "income", order.stream().map(income::get).toList()
-        ));
+        return conditional.respond(ifNoneMatch, etag(user, "stats/monthly", months, YearMonth.now()), () -> {
+            Map<YearMonth, Double> expenses = statisticService.getMonthlyExpenses(user, months);
+            Map<YearMonth, Double> income = statisticService.getMonthlyIncome(user, months);
+            List<YearMonth> order = expenses.keySet().stream().sorted().toList();
+            return ResponseEntity.ok(Map.of(
+                    "months", order.stream().map(ym -> ym.getYear()+"-"+String.format("%02d", ym.getMonthValue())).toList(),
+                    "expenses", order.stream().map(expenses::get).toList(),
+                    "income", order.stream().map(income::get).toList()
+            ));
+        });
     }
 
     @GetMapping("/category")
     public ResponseEntity<Map<String, Double>> byCategory(@RequestParam int year, @RequestParam int month,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                                           Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        Map<String, Double> m = statisticService.getExpensesByCategory(user, YearMonth.of(year, month));
-        return ResponseEntity.ok(m);
+        return conditional.respond(ifNoneMatch, etag(user, "stats/category", year, month),
+                () -> ResponseEntity.ok(statisticService.getExpensesByCategory(user, YearMonth.of(year, month))));
     }
 
     @GetMapping("/predict")
     public ResponseEntity<Map<String, Object>> predict(@RequestParam(defaultValue = "12") int months,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                                        Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        double v = statisticService.predictNextMonthExpense(user, months);
-        return ResponseEntity.ok(Map.of("months", months, "nextExpense", v));
+        return conditional.respond(ifNoneMatch, etag(user, "stats/predict", months, YearMonth.now()), () -> {
+            double v = statisticService.predictNextMonthExpense(user, months);
+            return ResponseEntity.ok(Map.of("months", months, "nextExpense", v));
+        });
     }
 
     @GetMapping("/trend")
     public ResponseEntity<Map<String, Object>> trend(@RequestParam(defaultValue = "12") int months,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                                      Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        double t = statisticService.getExpenseTrend(user, months);
-        double avg = statisticService.getAverageMonthlyExpense(user, months);
-        return ResponseEntity.ok(Map.of("months", months, "trendPercent", t, "avgExpense", avg));
+        return conditional.respond(ifNoneMatch, etag(user, "stats/trend", months, YearMonth.now()), () -> {
+            double t = statisticService.getExpenseTrend(user, months);
+            double avg = statisticService.getAverageMonthlyExpense(user, months);
+            return ResponseEntity.ok(Map.of("months", months, "trendPercent", t, "avgExpense", avg));
+        });
+    }
+
+    // 统计缓存的命中率等指标
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> cacheMetrics() {
+        return ResponseEntity.ok(statsCache.getMetrics());
     }
 
     @GetMapping("/month")
     public ResponseEntity<Map<String, Object>> month(@RequestParam int year,
                                                      @RequestParam int month,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
                                                      Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        Map<String, Object> m = statisticService.getMonthlyStatistics(user, year, month);
-        return ResponseEntity.ok(m);
+        return conditional.respond(ifNoneMatch, etag(user, "stats/month", year, month),
+                () -> ResponseEntity.ok(statisticService.getMonthlyStatistics(user, year, month)));
+    }
+
+    // 统计结果只取决于用户交易数据的版本与请求参数
+    private String etag(String user, String resource, Object... params) {
+        return conditional.etag(user, resource, conditional.versions().transactionVersion(user), params);
     }
 }
@@ -1,13 +1,18 @@
 package com.accounting.api;
 
 import com.accounting.model.Transaction;
+import com.accounting.repository.TransactionCursor;
 import com.accounting.service.SyncService;
 import com.accounting.service.TransactionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -15,21 +20,31 @@ import java.util.Map;
 @RequestMapping("/api/sync")
 public class SyncController {
 
+    static final String SNAPSHOT_VERSION_HEADER = "X-Sync-Version";
+
     private final SyncService syncService;
     private final TransactionService transactionService;
+    private final ObjectMapper objectMapper;
+    private final ConditionalResponses conditional;
 
     @Autowired
-    public SyncController(SyncService syncService, TransactionService transactionService) {
+    public SyncController(SyncService syncService, TransactionService transactionService,
+                          ObjectMapper objectMapper, ConditionalResponses conditional) {
         this.syncService = syncService;
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
+        this.conditional = conditional;
     }
 
     @GetMapping
     public ResponseEntity<Map<String, Object>> pull(
             @RequestParam(name = "last_version", defaultValue = "0") Long lastVersion,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(name = "latest_only", defaultValue = "false") boolean latestOnly,
             Authentication auth) {
         String userId = auth != null ? auth.getName() : null;
-        return ResponseEntity.ok(syncService.pull(userId, lastVersion));
+        Integer pageSize = limit != null ? TransactionsController.pageSize(limit) : null;
+        return ResponseEntity.ok(syncService.pull(userId, lastVersion, pageSize, latestOnly));
     }
 
     @PostMapping
@@ -41,11 +56,52 @@ public class SyncController {
     }
 
     // 兼容桌面客户端：获取当前用户的账单列表
+    // 传入 limit 或 cursor 时按 (date, id) 分页，下一页游标见 X-Next-Cursor 响应头
     @GetMapping("/transactions")
-    public ResponseEntity<List<Transaction>> listTransactions(Authentication auth) {
+    public ResponseEntity<List<Transaction>> listTransactions(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication auth) {
         String userId = auth != null ? auth.getName() : null;
-        List<Transaction> list = transactionService.getTransactionsByUserId(userId);
-        return ResponseEntity.ok(list);
+        String etag = conditional.etag(userId, "sync-transactions",
+                conditional.versions().transactionVersion(userId), limit, cursor);
+        return conditional.respond(ifNoneMatch, etag, () -> {
+            if (limit == null && cursor == null) {
+                List<Transaction> list = transactionService.getTransactionsByUserId(userId);
+                return ResponseEntity.ok(list);
+            }
+            TransactionCursor after;
+            try {
+                after = cursor != null ? TransactionCursor.decode(cursor) : null;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            return TransactionsController.pageResponse(
+                    transactionService.findPageByUserId(userId, after, TransactionsController.pageSize(limit)));
+        });
+    }
+
+    // 流式输出当前用户的全部账单（NDJSON）
+    @GetMapping(value = "/transactions/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void streamTransactions(Authentication auth, HttpServletResponse response) throws IOException {
+        String userId = auth != null ? auth.getName() : null;
+        NdjsonWriter writer = NdjsonWriter.open(response, objectMapper);
+        transactionService.streamByUserId(userId, writer);
+        writer.finish();
+    }
+
+    // 新设备引导：NDJSON 流，首行为 {"snapshot_version": n}，其后每行一条交易；
+    // 客户端导入后以 snapshot_version 作为 last_version 继续增量拉取
+    @GetMapping(value = "/snapshot", produces = NdjsonWriter.MEDIA_TYPE)
+    public void snapshot(Authentication auth, HttpServletResponse response) throws IOException {
+        String userId = auth != null ? auth.getName() : null;
+        NdjsonWriter writer = NdjsonWriter.open(response, objectMapper);
+        syncService.snapshot(userId, version -> {
+            response.setHeader(SNAPSHOT_VERSION_HEADER, Long.toString(version));
+            writer.accept(Map.of("snapshot_version", version));
+        }, writer);
+        writer.finish();
     }
 
     // 兼容桌面客户端：上传账单列表并返回当前用户账单
@@ -1,21 +1,51 @@
 package com.accounting.api;
 
+import com.accounting.filter.FilterRule;
 import com.accounting.model.Transaction;
+import com.accounting.repository.TransactionCursor;
+import com.accounting.service.TransactionPage;
 import com.accounting.service.TransactionService;
 import com.accounting.storage.StorageManager;
+import com.accounting.util.CsvImportResult;
+import com.accounting.util.TransactionCsvWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionsController {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int MAX_PAGE_SIZE = 1000;
+    private static final String CSV_MEDIA_TYPE = "text/csv";
+    private static final String GZIP_MEDIA_TYPE = "application/gzip";
+
     private final TransactionService transactionService;
+    private final ObjectMapper objectMapper;
+    private final ConditionalResponses conditional;
 
-    public TransactionsController(TransactionService transactionService) {
+    public TransactionsController(TransactionService transactionService, ObjectMapper objectMapper,
+                                  ConditionalResponses conditional) {
         this.transactionService = transactionService;
+        this.objectMapper = objectMapper;
+        this.conditional = conditional;
     }
 
     @GetMapping
@@ -27,33 +57,146 @@ public class TransactionsController {
             @RequestParam(required = false) Double min,
             @RequestParam(required = false) Double max,
             @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
             Authentication auth) {
         String user = auth != null ? auth.getName() : null;
-        List<Transaction> base = transactionService.getTransactionsByUserId(user);
-        com.accounting.filter.FilterRule rule = com.accounting.filter.FilterRule.byKeyword(q);
+        String etag = conditional.etag(user, "transactions", conditional.versions().transactionVersion(user),
+                categoryId, type, start, end, min, max, q, limit, cursor);
+        return conditional.respond(ifNoneMatch, etag, () -> {
+            FilterRule rule = buildRule(categoryId, type, start, end, min, max, q);
+            if (limit == null && cursor == null) {
+                return ResponseEntity.ok(transactionService.findVisibleForUser(user, rule));
+            }
+            TransactionCursor after;
+            try {
+                after = cursor != null ? TransactionCursor.decode(cursor) : null;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            TransactionPage page = transactionService.findPageVisibleForUser(user, rule, after, pageSize(limit));
+            return pageResponse(page);
+        });
+    }
+
+    // 按 (date, id) 顺序逐行输出 NDJSON，筛选参数与列表接口一致
+    @GetMapping(value = "/stream", produces = NdjsonWriter.MEDIA_TYPE)
+    public void stream(
+            @RequestParam(required = false) String categoryId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(required = false) Double min,
+            @RequestParam(required = false) Double max,
+            @RequestParam(required = false) String q,
+            Authentication auth,
+            HttpServletResponse response) throws IOException {
+        String user = auth != null ? auth.getName() : null;
+        FilterRule rule = buildRule(categoryId, type, start, end, min, max, q);
+        NdjsonWriter writer = NdjsonWriter.open(response, objectMapper);
+        transactionService.streamVisibleForUser(user, rule, writer);
+        writer.finish();
+    }
+
+    // 导出筛选结果：format=csv（默认，RFC 4180）或 ndjson；gzip=true 时输出 .gz 附件
+    // 行从数据库游标逐条写出，内存占用与导出的时间跨度无关
+    @GetMapping("/export")
+    public void export(
+            @RequestParam(required = false) String categoryId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String start,
+            @RequestParam(required = false) String end,
+            @RequestParam(required = false) Double min,
+            @RequestParam(required = false) Double max,
+            @RequestParam(required = false) String q,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            Authentication auth,
+            HttpServletResponse response) throws IOException {
+        boolean ndjson = "ndjson".equalsIgnoreCase(format);
+        if (!ndjson && !"csv".equalsIgnoreCase(format)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "format 只能是 csv 或 ndjson");
+            return;
+        }
+        String user = auth != null ? auth.getName() : null;
+        FilterRule rule = buildRule(categoryId, type, start, end, min, max, q);
+        String fileName = "transactions-" + LocalDate.now() + (ndjson ? ".ndjson" : ".csv") + (gzip ? ".gz" : "");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(fileName).build().toString());
+        if (gzip) {
+            response.setContentType(GZIP_MEDIA_TYPE);
+        } else {
+            response.setContentType(ndjson ? NdjsonWriter.MEDIA_TYPE : CSV_MEDIA_TYPE);
+            response.setCharacterEncoding("UTF-8");
+        }
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : null;
+        OutputStream body = compressed != null ? compressed : response.getOutputStream();
+        if (ndjson) {
+            NdjsonWriter writer = NdjsonWriter.to(body, objectMapper);
+            transactionService.streamVisibleForUser(user, rule, writer);
+            writer.finish();
+        } else {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 8192);
+            TransactionCsvWriter csv = new TransactionCsvWriter(writer);
+            csv.writeHeader();
+            transactionService.streamVisibleForUser(user, rule, csv);
+            writer.flush();
+        }
+        if (compressed != null) {
+            compressed.finish();
+        }
+    }
+
+    // 请求体为 CSV（列与导出一致，首行为表头），记录全部归属当前用户；分批提交，返回成功数与失败行
+    @PostMapping(value = "/import", consumes = {"text/csv", "text/plain", "application/octet-stream"})
+    public ResponseEntity<CsvImportResult> importCsv(Authentication auth, HttpServletRequest request) throws IOException {
+        String user = auth != null ? auth.getName() : null;
+        if (user == null) return ResponseEntity.status(401).build();
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            return ResponseEntity.ok(transactionService.importFromCSV(reader, user, processed -> { }));
+        }
+    }
+
+    static int pageSize(Integer limit) {
+        if (limit == null) return MAX_PAGE_SIZE;
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    // 下一页游标放在响应头中，响应体仍是交易数组；最后一页不带该响应头
+    static ResponseEntity<List<Transaction>> pageResponse(TransactionPage page) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (page.hasMore()) {
+            builder.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return builder.body(page.getItems());
+    }
+
+    private static FilterRule buildRule(String categoryId, String type, String start, String end,
+                                        Double min, Double max, String q) {
+        FilterRule rule = FilterRule.byKeyword(q);
         if (categoryId != null && !categoryId.isBlank()) {
-            rule = rule.and(com.accounting.filter.FilterRule.byCategory(categoryId));
+            rule = rule.and(FilterRule.byCategory(categoryId));
         }
         if (type != null && !type.isBlank()) {
             try {
                 var tt = Transaction.TransactionType.valueOf(type);
-                rule = rule.and(com.accounting.filter.FilterRule.byType(tt));
+                rule = rule.and(FilterRule.byType(tt));
             } catch (IllegalArgumentException ignored) {}
         }
         if (min != null || max != null) {
             double lo = min != null ? min : Double.NEGATIVE_INFINITY;
             double hi = max != null ? max : Double.POSITIVE_INFINITY;
-            rule = rule.and(com.accounting.filter.FilterRule.amountRange(lo, hi));
+            rule = rule.and(FilterRule.amountRange(lo, hi));
         }
         if (start != null && end != null) {
             try {
                 var s = java.time.LocalDateTime.parse(start);
                 var e = java.time.LocalDateTime.parse(end);
-                rule = rule.and(com.accounting.filter.FilterRule.dateRange(s, e));
+                rule = rule.and(FilterRule.dateRange(s, e));
             } catch (Exception ignored) {}
         }
-        List<Transaction> filtered = base.stream().filter(rule::test).toList();
-        return ResponseEntity.ok(filtered);
+        return rule;
     }
 
     @GetMapping("/{id}")
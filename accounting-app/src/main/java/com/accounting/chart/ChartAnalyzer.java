@@ -1,61 +1,95 @@
 package com.accounting.chart;
 
 import com.accounting.service.local.LocalStatisticService;
+import com.accounting.service.local.TransactionCube;
+import java.time.Clock;
 import java.time.YearMonth;
 import java.time.Year;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.stream.Collectors;
 import com.accounting.model.Transaction;
 
+/**
+ * 图表数据分析
+ * 所有序列都从同一个聚合立方体读取，一次刷新只扫描一遍交易
+ */
 public class ChartAnalyzer {
     private final LocalStatisticService statisticService;
+    // 序列以当前月/年结尾，测试时可固定
+    private final Clock clock;
     public ChartAnalyzer(LocalStatisticService statisticService) {
+        this(statisticService, Clock.systemDefaultZone());
+    }
+
+    ChartAnalyzer(LocalStatisticService statisticService, Clock clock) {
         this.statisticService = statisticService;
+        this.clock = clock;
     }
-    
+
     public Map<String, Double> categoryExpense(String userId, YearMonth ym) {
-        return statisticService.getExpensesByCategory(userId, ym);
+        return statisticService.getCube(userId).byCategory(ym, Transaction.TransactionType.EXPENSE);
     }
-    
+
     public Map<String, Double> categoryIncome(String userId, YearMonth ym) {
-        return statisticService.getIncomesByCategory(userId, ym);
+        return statisticService.getCube(userId).byCategory(ym, Transaction.TransactionType.INCOME);
     }
-    
+
     public List<Double> monthlyExpensesSeries(String userId, int months) {
-        Map<YearMonth, Double> m = statisticService.getMonthlyExpenses(userId, months);
-        return m.keySet().stream().sorted().map(m::get).collect(Collectors.toList());
+        return monthlySeries(statisticService.getCube(userId), months, Transaction.TransactionType.EXPENSE);
     }
-    
+
     public List<Double> monthlyIncomeSeries(String userId, int months) {
-        Map<YearMonth, Double> m = statisticService.getMonthlyIncome(userId, months);
-        return m.keySet().stream().sorted().map(m::get).collect(Collectors.toList());
+        return monthlySeries(statisticService.getCube(userId), months, Transaction.TransactionType.INCOME);
     }
-    
+
     public List<Double> monthlyNetSeries(String userId, int months) {
-        Map<YearMonth, Double> expenses = statisticService.getMonthlyExpenses(userId, months);
-        Map<YearMonth, Double> incomes = statisticService.getMonthlyIncome(userId, months);
-        return expenses.keySet().stream().sorted()
-            .map(ym -> incomes.getOrDefault(ym, 0.0) - expenses.getOrDefault(ym, 0.0))
-            .collect(Collectors.toList());
+        TransactionCube cube = statisticService.getCube(userId);
+        List<Double> incomes = monthlySeries(cube, months, Transaction.TransactionType.INCOME);
+        List<Double> expenses = monthlySeries(cube, months, Transaction.TransactionType.EXPENSE);
+        return difference(incomes, expenses);
     }
-    
+
     public List<Double> yearlyExpensesSeries(String userId, int years) {
-        Map<Integer, Double> yearlyData = statisticService.getYearlyExpenses(userId, years);
-        return yearlyData.keySet().stream().sorted().map(yearlyData::get).collect(Collectors.toList());
+        return yearlySeries(statisticService.getCube(userId), years, Transaction.TransactionType.EXPENSE);
     }
-    
+
     public List<Double> yearlyIncomeSeries(String userId, int years) {
-        Map<Integer, Double> yearlyData = statisticService.getYearlyIncome(userId, years);
-        return yearlyData.keySet().stream().sorted().map(yearlyData::get).collect(Collectors.toList());
+        return yearlySeries(statisticService.getCube(userId), years, Transaction.TransactionType.INCOME);
     }
-    
+
     public List<Double> yearlyNetSeries(String userId, int years) {
-        Map<Integer, Double> expenses = statisticService.getYearlyExpenses(userId, years);
-        Map<Integer, Double> incomes = statisticService.getYearlyIncome(userId, years);
-        return expenses.keySet().stream().sorted()
-            .map(y -> incomes.getOrDefault(y, 0.0) - expenses.getOrDefault(y, 0.0))
-            .collect(Collectors.toList());
+        TransactionCube cube = statisticService.getCube(userId);
+        List<Double> incomes = yearlySeries(cube, years, Transaction.TransactionType.INCOME);
+        List<Double> expenses = yearlySeries(cube, years, Transaction.TransactionType.EXPENSE);
+        return difference(incomes, expenses);
+    }
+
+    // 按时间先后排列，最后一项为当前月
+    private List<Double> monthlySeries(TransactionCube cube, int months, Transaction.TransactionType type) {
+        YearMonth current = YearMonth.now(clock);
+        List<Double> series = new ArrayList<>(Math.max(0, months));
+        for (int i = months - 1; i >= 0; i--) {
+            series.add(cube.total(current.minusMonths(i), type));
+        }
+        return series;
+    }
+
+    // 按时间先后排列，最后一项为当前年
+    private List<Double> yearlySeries(TransactionCube cube, int years, Transaction.TransactionType type) {
+        int current = Year.now(clock).getValue();
+        List<Double> series = new ArrayList<>(Math.max(0, years));
+        for (int i = years - 1; i >= 0; i--) {
+            series.add(cube.yearTotal(current - i, type));
+        }
+        return series;
+    }
+
+    private List<Double> difference(List<Double> incomes, List<Double> expenses) {
+        List<Double> net = new ArrayList<>(incomes.size());
+        for (int i = 0; i < incomes.size(); i++) {
+            net.add(incomes.get(i) - expenses.get(i));
+        }
+        return net;
     }
 }
@@ -0,0 +1,38 @@
+package com.accounting.config;
+
+import com.accounting.service.BudgetService;
+import com.accounting.service.SpendCounterService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时修补预算数据
+ * 升级前保存的周期型预算没有结束日期列，补写后才能被区间查询找到；
+ * 每日支出表建好后再补算这些预算的已用金额
+ */
+@Component
+public class BudgetDataInitializer implements ApplicationRunner {
+    private final BudgetService budgetService;
+    private final SpendCounterService spendCounters;
+
+    public BudgetDataInitializer(BudgetService budgetService, SpendCounterService spendCounters) {
+        this.budgetService = budgetService;
+        this.spendCounters = spendCounters;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            budgetService.backfillEndDates();
+        } catch (Exception e) {
+            System.err.println("补写预算结束日期失败: " + e.getMessage());
+        }
+        try {
+            spendCounters.rebuildIfEmpty();
+            budgetService.backfillSpent();
+        } catch (Exception e) {
+            System.err.println("补算预算已用金额失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.accounting.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时补建索引
+ * SQLite 方言下 ddl-auto=update 不会给已存在的表补建 @Index，
+ * 这里用 CREATE INDEX IF NOT EXISTS 保证旧数据库也有与实体注解一致的索引。
+ * 在所有单例创建完成后、Web 服务器开始接收请求前执行；唯一索引约束数据正确性，
+ * 清理重复数据或建唯一索引失败时抛出异常，终止启动
+ */
+@Component
+public class DatabaseIndexInitializer implements SmartInitializingSingleton {
+    private static final List<String> UNIQUE_INDEXES = List.of(
+        "CREATE UNIQUE INDEX IF NOT EXISTS uk_sync_log_user_version ON sync_log_v2 (user_id, version)",
+        // 每个用户每月每个分类只有一条月度预算，总预算同理；周期型预算不受约束。
+        // NULL 在唯一索引中互不相等，总预算单独建索引；不用表达式索引，Hibernate 读取表结构时无法处理
+        "CREATE UNIQUE INDEX IF NOT EXISTS uk_budgets_monthly_category ON budgets (user_id, category_id, year, month) " +
+            "WHERE start_date IS NULL AND category_id IS NOT NULL",
+        "CREATE UNIQUE INDEX IF NOT EXISTS uk_budgets_monthly_total ON budgets (user_id, year, month) " +
+            "WHERE start_date IS NULL AND category_id IS NULL"
+    );
+    // 仅用于加速查询，失败时记录后继续
+    private static final List<String> INDEXES = List.of(
+        "CREATE INDEX IF NOT EXISTS idx_transactions_user_date ON transactions (user_id, date)",
+        "CREATE INDEX IF NOT EXISTS idx_transactions_user_category_date ON transactions (user_id, category_id, date)",
+        // 键集分页按 (date, id) 排序，索引包含 id 后同一日期内不必再排序
+        "CREATE INDEX IF NOT EXISTS idx_transactions_date_id ON transactions (date, id)",
+        "CREATE INDEX IF NOT EXISTS idx_transactions_category ON transactions (category_id)",
+        "CREATE INDEX IF NOT EXISTS idx_sync_log_user_entity_version ON sync_log_v2 (user_id, entity_id, version)",
+        "CREATE INDEX IF NOT EXISTS idx_budgets_user_category_period ON budgets (user_id, category_id, start_date, end_date)",
+        // 被唯一索引取代
+        "DROP INDEX IF EXISTS idx_sync_log_user_version",
+        // 被 idx_transactions_date_id 取代
+        "DROP INDEX IF EXISTS idx_transactions_date"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DatabaseIndexInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        renumberDuplicateSyncVersions();
+        removeDuplicateMonthlyBudgets();
+        for (String ddl : UNIQUE_INDEXES) {
+            jdbcTemplate.execute(ddl);
+        }
+        for (String ddl : INDEXES) {
+            try {
+                jdbcTemplate.execute(ddl);
+            } catch (Exception e) {
+                System.err.println("创建索引失败: " + e.getMessage());
+            }
+        }
+        try {
+            // 更新查询规划器的统计信息，让新索引立即被选用
+            jdbcTemplate.execute("ANALYZE");
+        } catch (Exception e) {
+            System.err.println("更新统计信息失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 旧版本按 MAX(version)+1 分配版本号，并发写入会产生重复。
+     * 建唯一索引前，把每组重复中除最早一条外的记录改到该用户当前最大版本号之后；
+     * 客户端会再次拉到这些变更，重放是幂等的。
+     * 旧库上还没有 (user_id, version) 索引，相关子查询会退化为平方复杂度（百万行时启动卡住），
+     * 这里用窗口函数一次排序找出每组中第一条之后的记录
+     */
+    private void renumberDuplicateSyncVersions() {
+        List<Map<String, Object>> duplicates = jdbcTemplate.queryForList(
+            "SELECT id, user_id FROM (SELECT id, user_id, version, timestamp, ROW_NUMBER() OVER " +
+            "(PARTITION BY user_id, version ORDER BY timestamp, id) AS rn FROM sync_log_v2) " +
+            "WHERE rn > 1 ORDER BY user_id, version, timestamp, id");
+        if (duplicates.isEmpty()) return;
+        Map<String, Long> maxVersions = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, MAX(version) FROM sync_log_v2 GROUP BY user_id",
+            rs -> { maxVersions.put(rs.getString(1), rs.getLong(2)); });
+        for (Map<String, Object> row : duplicates) {
+            long version = maxVersions.merge((String) row.get("user_id"), 1L, Long::sum);
+            jdbcTemplate.update("UPDATE sync_log_v2 SET version = ? WHERE id = ?", version, row.get("id"));
+        }
+    }
+
+    /**
+     * 旧版本在读取月度预算时才顺带删除重复记录。建唯一索引前一次性清理：
+     * 空字符串分类统一为 NULL（都表示总预算），每组重复只保留读取时一直返回的那条（rowid 最小）
+     */
+    private void removeDuplicateMonthlyBudgets() {
+        jdbcTemplate.update("UPDATE budgets SET category_id = NULL WHERE category_id = '' AND start_date IS NULL");
+        jdbcTemplate.update(
+            "DELETE FROM budgets WHERE start_date IS NULL AND EXISTS (SELECT 1 FROM budgets o " +
+            "WHERE o.start_date IS NULL AND o.user_id IS budgets.user_id AND o.category_id IS budgets.category_id " +
+            "AND o.year = budgets.year AND o.month = budgets.month AND o.rowid < budgets.rowid)");
+    }
+}
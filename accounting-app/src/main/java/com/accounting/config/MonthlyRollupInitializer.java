@@ -0,0 +1,28 @@
+package com.accounting.config;
+
+import com.accounting.service.MonthlyRollupService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * 启动时初始化月度汇总
+ * 升级前已有交易的数据库，首次启动时从交易表重建一次汇总
+ */
+@Component
+public class MonthlyRollupInitializer implements ApplicationRunner {
+    private final MonthlyRollupService rollupService;
+
+    public MonthlyRollupInitializer(MonthlyRollupService rollupService) {
+        this.rollupService = rollupService;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            rollupService.rebuildIfEmpty();
+        } catch (Exception e) {
+            System.err.println("重建月度汇总失败: " + e.getMessage());
+        }
+    }
+}
@@ -2,104 +2,157 @@ package com.accounting.filter;
 
 import com.accounting.model.Transaction;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
  * 筛选规则类
  * 使用策略模式实现多条件过滤
+ * 除内存谓词外，每条规则还保留结构化的条件描述（类型 + 参数 + 子规则），
+ * 供 {@link FilterRuleCompiler} 编译为数据库查询
  */
 public class FilterRule {
+    /**
+     * 规则类型
+     */
+    public enum Kind {
+        ALL, DATE_RANGE, CATEGORY, TYPE, AMOUNT_RANGE, KEYWORD, AND, OR, NOT, CUSTOM
+    }
+
     private Predicate<Transaction> predicate;
     private String description;
-    
-    private FilterRule(Predicate<Transaction> predicate, String description) {
+    private final Kind kind;
+    private final Object[] arguments;
+    private final List<FilterRule> operands;
+
+    private FilterRule(Predicate<Transaction> predicate, String description,
+                       Kind kind, Object[] arguments, List<FilterRule> operands) {
         this.predicate = predicate;
         this.description = description;
+        this.kind = kind;
+        this.arguments = arguments;
+        this.operands = operands;
+    }
+
+    private static FilterRule leaf(Predicate<Transaction> predicate, String description, Kind kind, Object... arguments) {
+        return new FilterRule(predicate, description, kind, arguments, Collections.emptyList());
     }
-    
+
     public boolean test(Transaction transaction) {
         return predicate.test(transaction);
     }
-    
+
     public String getDescription() {
         return description;
     }
-    
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * 条件参数，顺序与对应工厂方法的参数一致
+     */
+    public Object getArgument(int index) {
+        return arguments[index];
+    }
+
+    /**
+     * 组合规则（AND/OR/NOT）的子规则
+     */
+    public List<FilterRule> getOperands() {
+        return operands;
+    }
+
+    // 自定义谓词，无法编译为数据库查询，只能在内存中过滤
+    public static FilterRule of(Predicate<Transaction> predicate, String description) {
+        return leaf(predicate, description, Kind.CUSTOM);
+    }
+
     // 按日期范围筛选
     public static FilterRule dateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return new FilterRule(
+        return leaf(
             t -> {
                 if (t.getDate() == null) return false;
                 return !t.getDate().isBefore(startDate) && !t.getDate().isAfter(endDate);
             },
-            "日期范围: " + startDate + " 至 " + endDate
+            "日期范围: " + startDate + " 至 " + endDate,
+            Kind.DATE_RANGE, startDate, endDate
         );
     }
-    
+
     // 按分类筛选
     public static FilterRule byCategory(String categoryId) {
-        return new FilterRule(
+        return leaf(
             t -> categoryId == null || categoryId.equals(t.getCategoryId()),
-            "分类: " + categoryId
+            "分类: " + categoryId,
+            Kind.CATEGORY, categoryId
         );
     }
-    
+
     // 按类型筛选（支出/收入）
     public static FilterRule byType(Transaction.TransactionType type) {
-        return new FilterRule(
+        return leaf(
             t -> type == null || type.equals(t.getType()),
-            "类型: " + (type != null ? type.getDisplayName() : "全部")
+            "类型: " + (type != null ? type.getDisplayName() : "全部"),
+            Kind.TYPE, type
         );
     }
-    
+
     // 按金额范围筛选
     public static FilterRule amountRange(double minAmount, double maxAmount) {
-        return new FilterRule(
+        return leaf(
             t -> t.getAmount() >= minAmount && t.getAmount() <= maxAmount,
-            "金额范围: " + minAmount + " - " + maxAmount
+            "金额范围: " + minAmount + " - " + maxAmount,
+            Kind.AMOUNT_RANGE, minAmount, maxAmount
         );
     }
-    
+
     // 按关键字筛选（描述、标签）
     public static FilterRule byKeyword(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) {
-            return new FilterRule(t -> true, "关键字: 无");
+            return leaf(t -> true, "关键字: 无", Kind.ALL);
         }
         String lowerKeyword = keyword.toLowerCase();
-        return new FilterRule(
+        return leaf(
             t -> {
-                boolean matchDescription = t.getDescription() != null && 
+                boolean matchDescription = t.getDescription() != null &&
                     t.getDescription().toLowerCase().contains(lowerKeyword);
-                boolean matchTags = t.getTags() != null && 
+                boolean matchTags = t.getTags() != null &&
                     t.getTags().toLowerCase().contains(lowerKeyword);
                 return matchDescription || matchTags;
             },
-            "关键字: " + keyword
+            "关键字: " + keyword,
+            Kind.KEYWORD, lowerKeyword
         );
     }
-    
+
     // 组合多个规则（AND逻辑）
     public FilterRule and(FilterRule other) {
         return new FilterRule(
             this.predicate.and(other.predicate),
-            this.description + " AND " + other.description
+            this.description + " AND " + other.description,
+            Kind.AND, new Object[0], Arrays.asList(this, other)
         );
     }
-    
+
     // 组合多个规则（OR逻辑）
     public FilterRule or(FilterRule other) {
         return new FilterRule(
             this.predicate.or(other.predicate),
-            this.description + " OR " + other.description
+            this.description + " OR " + other.description,
+            Kind.OR, new Object[0], Arrays.asList(this, other)
         );
     }
-    
+
     // 取反
     public FilterRule negate() {
         return new FilterRule(
             this.predicate.negate(),
-            "NOT (" + this.description + ")"
+            "NOT (" + this.description + ")",
+            Kind.NOT, new Object[0], Collections.singletonList(this)
         );
     }
 }
-
@@ -0,0 +1,200 @@
+package com.accounting.filter;
+
+import com.accounting.model.Transaction;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * 筛选规则编译器
+ * 将 FilterRule 的结构化条件编译为 JPA Specification，由数据库完成过滤。
+ * 每个叶子条件都编译为不会得到 NULL 的表达式，保证取反（NOT）与内存谓词语义一致。
+ */
+public final class FilterRuleCompiler {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private FilterRuleCompiler() {
+    }
+
+    /**
+     * 编译整条规则，包含无法编译的条件时返回空
+     */
+    public static Optional<Specification<Transaction>> compile(FilterRule rule) {
+        if (rule == null || !isCompilable(rule)) {
+            return Optional.empty();
+        }
+        return Optional.of((root, query, cb) -> toPredicate(rule, root, cb));
+    }
+
+    /**
+     * 拆分顶层 AND 条件：可编译的部分下推到数据库，其余部分留给内存过滤
+     */
+    public static Plan plan(FilterRule rule) {
+        List<FilterRule> conjuncts = new ArrayList<>();
+        flatten(rule, conjuncts);
+        Specification<Transaction> specification = null;
+        FilterRule residual = null;
+        for (FilterRule conjunct : conjuncts) {
+            Optional<Specification<Transaction>> compiled = compile(conjunct);
+            if (compiled.isPresent()) {
+                specification = specification == null ? compiled.get() : specification.and(compiled.get());
+            } else {
+                residual = residual == null ? conjunct : residual.and(conjunct);
+            }
+        }
+        return new Plan(specification, residual);
+    }
+
+    private static void flatten(FilterRule rule, List<FilterRule> out) {
+        if (rule == null) return;
+        if (rule.getKind() == FilterRule.Kind.AND) {
+            for (FilterRule operand : rule.getOperands()) {
+                flatten(operand, out);
+            }
+        } else {
+            out.add(rule);
+        }
+    }
+
+    private static boolean isCompilable(FilterRule rule) {
+        switch (rule.getKind()) {
+            case CUSTOM:
+                return false;
+            case AND:
+            case OR:
+            case NOT:
+                return rule.getOperands().stream().allMatch(FilterRuleCompiler::isCompilable);
+            default:
+                return true;
+        }
+    }
+
+    private static Predicate toPredicate(FilterRule rule, Root<Transaction> root, CriteriaBuilder cb) {
+        switch (rule.getKind()) {
+            case ALL:
+                return cb.conjunction();
+            case DATE_RANGE: {
+                Path<LocalDateTime> date = root.get("date");
+                LocalDateTime start = (LocalDateTime) rule.getArgument(0);
+                LocalDateTime end = (LocalDateTime) rule.getArgument(1);
+                List<Predicate> parts = new ArrayList<>();
+                parts.add(cb.isNotNull(date));
+                if (start != null) parts.add(cb.greaterThanOrEqualTo(date, start));
+                if (end != null) parts.add(cb.lessThanOrEqualTo(date, end));
+                return cb.and(parts.toArray(new Predicate[0]));
+            }
+            case CATEGORY: {
+                String categoryId = (String) rule.getArgument(0);
+                if (categoryId == null) return cb.conjunction();
+                Path<String> category = root.get("categoryId");
+                return cb.and(cb.isNotNull(category), cb.equal(category, categoryId));
+            }
+            case TYPE: {
+                Transaction.TransactionType type = (Transaction.TransactionType) rule.getArgument(0);
+                if (type == null) return cb.conjunction();
+                Path<Transaction.TransactionType> typePath = root.get("type");
+                return cb.and(cb.isNotNull(typePath), cb.equal(typePath, type));
+            }
+            case AMOUNT_RANGE: {
+                double min = (Double) rule.getArgument(0);
+                double max = (Double) rule.getArgument(1);
+                if (Double.isNaN(min) || Double.isNaN(max)
+                        || min == Double.POSITIVE_INFINITY || max == Double.NEGATIVE_INFINITY) {
+                    return cb.disjunction();
+                }
+                // 无穷边界表示该侧不限
+                Path<Double> amount = root.get("amount");
+                List<Predicate> parts = new ArrayList<>();
+                if (!Double.isInfinite(min)) parts.add(cb.greaterThanOrEqualTo(amount, min));
+                if (!Double.isInfinite(max)) parts.add(cb.lessThanOrEqualTo(amount, max));
+                return cb.and(parts.toArray(new Predicate[0]));
+            }
+            case KEYWORD: {
+                // SQLite 的 lower() 只处理 ASCII 字母，中文关键字不受影响
+                String pattern = "%" + escapeLike((String) rule.getArgument(0)) + "%";
+                return cb.or(contains(root.get("description"), pattern, cb), contains(root.get("tags"), pattern, cb));
+            }
+            case AND:
+                return cb.and(operandPredicates(rule, root, cb));
+            case OR:
+                return cb.or(operandPredicates(rule, root, cb));
+            case NOT:
+                return cb.not(toPredicate(rule.getOperands().get(0), root, cb));
+            default:
+                throw new IllegalArgumentException("无法编译的筛选规则: " + rule.getDescription());
+        }
+    }
+
+    private static Predicate[] operandPredicates(FilterRule rule, Root<Transaction> root, CriteriaBuilder cb) {
+        return rule.getOperands().stream()
+            .map(operand -> toPredicate(operand, root, cb))
+            .toArray(Predicate[]::new);
+    }
+
+    private static Predicate contains(Path<String> field, String pattern, CriteriaBuilder cb) {
+        Expression<String> lower = cb.lower(field);
+        return cb.and(cb.isNotNull(field), cb.like(lower, pattern, LIKE_ESCAPE));
+    }
+
+    private static String escapeLike(String keyword) {
+        StringBuilder sb = new StringBuilder(keyword.length());
+        for (char c : keyword.toCharArray()) {
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                sb.append(LIKE_ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 编译计划：数据库查询条件 + 内存中的剩余条件
+     */
+    public static class Plan {
+        private final Specification<Transaction> specification;
+        private final FilterRule residual;
+
+        Plan(Specification<Transaction> specification, FilterRule residual) {
+            this.specification = specification;
+            this.residual = residual;
+        }
+
+        /**
+         * 下推到数据库的条件，为 null 表示不过滤
+         */
+        public Specification<Transaction> getSpecification() {
+            return specification;
+        }
+
+        /**
+         * 是否还有需要在内存中过滤的条件
+         */
+        public boolean hasResidual() {
+            return residual != null;
+        }
+
+        /**
+         * 单条记录是否满足剩余条件
+         */
+        public boolean matchesResidual(Transaction transaction) {
+            return residual == null || residual.test(transaction);
+        }
+
+        /**
+         * 对数据库返回的结果应用剩余条件
+         */
+        public List<Transaction> applyResidual(List<Transaction> rows) {
+            if (residual == null) return rows;
+            return rows.stream().filter(residual::test).collect(Collectors.toList());
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.accounting.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.google.gson.annotations.SerializedName;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -18,7 +22,10 @@ import java.util.UUID;
  * 支持月度预算设置
  */
 @Entity
-@Table(name = "budgets")
+@Table(name = "budgets", indexes = {
+    // 周期型预算按 (用户, 分类, 开始, 结束) 做区间查询
+    @Index(name = "idx_budgets_user_category_period", columnList = "userId, categoryId, start_date, end_date")
+})
 public class Budget {
     @Id
     @SerializedName("id")
@@ -58,6 +65,16 @@ public class Budget {
     @SerializedName("periodCount")
     @Column(name = "period_count")
     private Integer periodCount;
+
+    // 由开始日期与周期推算，保存时写入，仅用于数据库按日期范围查找生效中的预算
+    @Column(name = "end_date")
+    private LocalDate endDate;
+
+    // 周期内已用金额计数，随交易写入增量维护；为空表示尚未计算。
+    // 仅供服务端计算使用，不出现在接口中：预算列表的 ETag 只随预算变化，不随交易变化
+    @JsonIgnore
+    @Column(name = "spent")
+    private Double spent;
     
     public Budget() {
         this.id = UUID.randomUUID().toString();
@@ -176,10 +193,27 @@ public class Budget {
         this.periodCount = periodCount;
     }
 
+    public Double getSpent() {
+        return spent;
+    }
+
+    public void setSpent(Double spent) {
+        this.spent = spent;
+    }
+
     public enum PeriodUnit {
         DAYS, WEEKS, MONTHS, YEARS
     }
 
+    /**
+     * 按当前周期重新计算并保存结束日期
+     */
+    @PrePersist
+    @PreUpdate
+    public void refreshEndDate() {
+        this.endDate = getEndDate();
+    }
+
     /**
      * 预算结束日期（包含）
      */
@@ -0,0 +1,84 @@
+package com.accounting.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * 每日支出
+ * 按（用户, 日, 分类）累计支出金额与笔数，随交易的增删改在同一事务中增量维护。
+ * 日期以纪元日（LocalDate.toEpochDay）存储；分类为空时以空字符串存储。
+ */
+@Entity
+@Table(name = "daily_spend", indexes = {
+    // 主键列按字母排序，另建按用户取日期区间的索引
+    @Index(name = "idx_daily_spend_user_day", columnList = "userId, epochDay"),
+    @Index(name = "idx_daily_spend_user_category_day", columnList = "userId, categoryId, epochDay")
+})
+@IdClass(DailySpend.Key.class)
+public class DailySpend {
+    @Id
+    private String userId;
+
+    @Id
+    private long epochDay;
+
+    @Id
+    private String categoryId;
+
+    @Column(nullable = false)
+    private double total;
+
+    @Column(nullable = false)
+    private long transactionCount;
+
+    public DailySpend() {}
+
+    public String getUserId() { return userId; }
+    public long getEpochDay() { return epochDay; }
+    public String getCategoryId() { return categoryId; }
+    public double getTotal() { return total; }
+    public long getTransactionCount() { return transactionCount; }
+
+    /**
+     * 复合主键
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String userId;
+        private long epochDay;
+        private String categoryId;
+
+        public Key() {}
+
+        public Key(String userId, long epochDay, String categoryId) {
+            this.userId = userId;
+            this.epochDay = epochDay;
+            this.categoryId = categoryId;
+        }
+
+        public String getUserId() { return userId; }
+        public long getEpochDay() { return epochDay; }
+        public String getCategoryId() { return categoryId; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return epochDay == key.epochDay && Objects.equals(userId, key.userId)
+                    && Objects.equals(categoryId, key.categoryId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, epochDay, categoryId);
+        }
+    }
+}
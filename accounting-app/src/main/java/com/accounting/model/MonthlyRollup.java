@@ -0,0 +1,93 @@
+package com.accounting.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * 月度汇总
+ * 按（用户, 年, 月, 类型, 分类）累计金额与笔数，随交易的增删改在同一事务中增量维护。
+ * 类型或分类为空时以空字符串存储，保证主键列都不为 NULL。
+ */
+@Entity
+@Table(name = "monthly_rollups")
+@IdClass(MonthlyRollup.Key.class)
+public class MonthlyRollup {
+    @Id
+    private String userId;
+
+    @Id
+    private int year;
+
+    @Id
+    private int month;
+
+    @Id
+    private String type;
+
+    @Id
+    private String categoryId;
+
+    @Column(nullable = false)
+    private double total;
+
+    @Column(nullable = false)
+    private long transactionCount;
+
+    public MonthlyRollup() {}
+
+    public String getUserId() { return userId; }
+    public int getYear() { return year; }
+    public int getMonth() { return month; }
+    public String getType() { return type; }
+    public String getCategoryId() { return categoryId; }
+    public double getTotal() { return total; }
+    public long getTransactionCount() { return transactionCount; }
+
+    /**
+     * 复合主键
+     */
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private String userId;
+        private int year;
+        private int month;
+        private String type;
+        private String categoryId;
+
+        public Key() {}
+
+        public Key(String userId, int year, int month, String type, String categoryId) {
+            this.userId = userId;
+            this.year = year;
+            this.month = month;
+            this.type = type;
+            this.categoryId = categoryId;
+        }
+
+        public String getUserId() { return userId; }
+        public int getYear() { return year; }
+        public int getMonth() { return month; }
+        public String getType() { return type; }
+        public String getCategoryId() { return categoryId; }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return year == key.year && month == key.month && Objects.equals(userId, key.userId)
+                    && Objects.equals(type, key.type) && Objects.equals(categoryId, key.categoryId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, year, month, type, categoryId);
+        }
+    }
+}
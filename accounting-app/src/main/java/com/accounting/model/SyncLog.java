@@ -1,12 +1,19 @@
 package com.accounting.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 @Entity
 // 使用v2表名并采用UUID主键，解决SQLite自增插入兼容问题
-@Table(name = "sync_log_v2")
-public class SyncLog {
+// 增量拉取与最大版本号查询都按 (userId, version) 访问，同一用户的版本号唯一
+@Table(name = "sync_log_v2", indexes = {
+    @Index(name = "uk_sync_log_user_version", columnList = "userId, version", unique = true),
+    // 压缩任务按实体查找更高版本
+    @Index(name = "idx_sync_log_user_entity_version", columnList = "userId, entityId, version")
+})
+public class SyncLog implements Persistable<String> {
     @Id
     // 主键改为UUID字符串，避免数据库自增冲突
     private String id;
@@ -33,6 +40,10 @@ public class SyncLog {
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    // 主键在构造时生成，新建的日志直接 persist，无需先 SELECT 判断是否存在
+    @Transient
+    private transient boolean newEntity = true;
+
     public enum Action {
         ADD, UPDATE, DELETE
     }
@@ -68,4 +79,12 @@ public class SyncLog {
     public void setVersion(Long version) { this.version = version; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() { return newEntity; }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() { this.newEntity = false; }
 }
@@ -3,6 +3,7 @@ package com.accounting.model;
 import com.google.gson.annotations.SerializedName;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
@@ -14,7 +15,13 @@ import java.util.UUID;
  * 支持支出/收入两种类型
  */
 @Entity
-@Table(name = "transactions")
+// 索引与查询路径对应：按用户+日期、按用户+分类+日期、按日期范围与键集分页、按分类
+@Table(name = "transactions", indexes = {
+    @Index(name = "idx_transactions_user_date", columnList = "userId, date"),
+    @Index(name = "idx_transactions_user_category_date", columnList = "userId, categoryId, date"),
+    @Index(name = "idx_transactions_date_id", columnList = "date, id"),
+    @Index(name = "idx_transactions_category", columnList = "categoryId")
+})
 public class Transaction {
     @Id
     @SerializedName("id")
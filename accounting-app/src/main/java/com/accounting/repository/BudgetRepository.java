@@ -2,8 +2,13 @@ package com.accounting.repository;
 
 import com.accounting.model.Budget;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,9 +19,82 @@ public interface BudgetRepository extends JpaRepository<Budget, String> {
     // Find budget by user, year, month
     List<Budget> findByUserIdAndYearAndMonth(String userId, int year, int month);
     
-    // Find specific category budget
-    List<Budget> findByUserIdAndCategoryIdAndYearAndMonth(String userId, String categoryId, int year, int month);
+    // 某月的全部月度预算，不含同样带有年月的周期型预算
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.year = :year AND b.month = :month " +
+           "AND b.startDate IS NULL")
+    List<Budget> findMonthly(@Param("userId") String userId, @Param("year") int year, @Param("month") int month);
     
-    // Find total budget (categoryId is null)
-    List<Budget> findByUserIdAndCategoryIdIsNullAndYearAndMonth(String userId, int year, int month);
+    // 月度预算（无开始日期），受 (用户, 分类, 年, 月) 唯一索引约束，至多一条
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.categoryId IS NULL " +
+           "AND b.year = :year AND b.month = :month AND b.startDate IS NULL")
+    List<Budget> findMonthlyTotal(@Param("userId") String userId, @Param("year") int year, @Param("month") int month);
+    
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.categoryId = :categoryId " +
+           "AND b.year = :year AND b.month = :month AND b.startDate IS NULL")
+    List<Budget> findMonthlyByCategory(@Param("userId") String userId, @Param("categoryId") String categoryId,
+                                       @Param("year") int year, @Param("month") int month);
+    
+    // 原子写入月度分类预算：已存在则只更新金额，冲突目标须与 uk_budgets_monthly_category 唯一索引一致
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+        INSERT INTO budgets (id, user_id, category_id, amount, year, month, created_at, updated_at)
+        VALUES (:id, :userId, :categoryId, :amount, :year, :month, :now, :now)
+        ON CONFLICT (user_id, category_id, year, month) WHERE start_date IS NULL AND category_id IS NOT NULL
+        DO UPDATE SET amount = excluded.amount, updated_at = excluded.updated_at
+        """, nativeQuery = true)
+    void upsertMonthlyCategory(@Param("id") String id, @Param("userId") String userId,
+                               @Param("categoryId") String categoryId, @Param("amount") double amount,
+                               @Param("year") int year, @Param("month") int month,
+                               @Param("now") LocalDateTime now);
+    
+    // 原子写入月度总预算，冲突目标须与 uk_budgets_monthly_total 唯一索引一致
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = """
+        INSERT INTO budgets (id, user_id, category_id, amount, year, month, created_at, updated_at)
+        VALUES (:id, :userId, NULL, :amount, :year, :month, :now, :now)
+        ON CONFLICT (user_id, year, month) WHERE start_date IS NULL AND category_id IS NULL
+        DO UPDATE SET amount = excluded.amount, updated_at = excluded.updated_at
+        """, nativeQuery = true)
+    void upsertMonthlyTotal(@Param("id") String id, @Param("userId") String userId,
+                            @Param("amount") double amount, @Param("year") int year, @Param("month") int month,
+                            @Param("now") LocalDateTime now);
+    
+    // 覆盖指定日期的周期型预算，走 (用户, 分类, 开始, 结束) 索引
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.startDate <= :date AND b.endDate >= :date")
+    List<Budget> findActive(@Param("userId") String userId, @Param("date") LocalDate date);
+    
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.categoryId = :categoryId " +
+           "AND b.startDate <= :date AND b.endDate >= :date")
+    List<Budget> findActiveByCategory(@Param("userId") String userId, @Param("categoryId") String categoryId,
+                                      @Param("date") LocalDate date);
+    
+    // 结束日期尚未写入的旧周期型预算
+    List<Budget> findByStartDateIsNotNullAndEndDateIsNull();
+    
+    // 与日期区间有交集的周期型预算
+    @Query("SELECT b FROM Budget b WHERE b.userId = :userId AND b.startDate <= :toDate AND b.endDate >= :fromDate")
+    List<Budget> findOverlapping(@Param("userId") String userId, @Param("fromDate") LocalDate fromDate,
+                                 @Param("toDate") LocalDate toDate);
+    
+    // 已用金额尚未计算的周期型预算
+    List<Budget> findByUserIdIsNotNullAndEndDateIsNotNullAndSpentIsNull();
+    
+    // 给覆盖指定日期的分类预算累加已用金额
+    @Modifying
+    @Query("UPDATE Budget b SET b.spent = b.spent + :delta WHERE b.userId = :userId AND b.categoryId = :categoryId " +
+           "AND b.startDate <= :date AND b.endDate >= :date AND b.spent IS NOT NULL")
+    int addSpent(@Param("userId") String userId, @Param("categoryId") String categoryId,
+                 @Param("date") LocalDate date, @Param("delta") double delta);
+    
+    // 给覆盖指定日期的总预算累加已用金额
+    @Modifying
+    @Query("UPDATE Budget b SET b.spent = b.spent + :delta WHERE b.userId = :userId AND b.categoryId IS NULL " +
+           "AND b.startDate <= :date AND b.endDate >= :date AND b.spent IS NOT NULL")
+    int addSpentToTotal(@Param("userId") String userId, @Param("date") LocalDate date,
+                        @Param("delta") double delta);
+    
+    // 全部交易被清空时已用金额归零
+    @Modifying
+    @Query("UPDATE Budget b SET b.spent = 0 WHERE b.spent IS NOT NULL")
+    int resetSpent();
 }
@@ -0,0 +1,48 @@
+package com.accounting.repository;
+
+import com.accounting.model.DailySpend;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import jakarta.persistence.QueryHint;
+
+@Repository
+public interface DailySpendRepository extends JpaRepository<DailySpend, DailySpend.Key> {
+
+    // 用户在纪元日区间内（含首尾）的支出合计
+    // 每日支出只经原子累加语句修改，查询前无需刷新会话中的其它实体（批量补算预算时避免每次查询都全量脏检查）
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "COMMIT"))
+    @Query("SELECT COALESCE(SUM(d.total), 0) FROM DailySpend d WHERE d.userId = :userId " +
+           "AND d.epochDay BETWEEN :fromDay AND :toDay")
+    double sumBetween(@Param("userId") String userId,
+                      @Param("fromDay") long fromDay,
+                      @Param("toDay") long toDay);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.flushMode", value = "COMMIT"))
+    @Query("SELECT COALESCE(SUM(d.total), 0) FROM DailySpend d WHERE d.userId = :userId " +
+           "AND d.categoryId = :categoryId AND d.epochDay BETWEEN :fromDay AND :toDay")
+    double sumBetweenByCategory(@Param("userId") String userId,
+                                @Param("categoryId") String categoryId,
+                                @Param("fromDay") long fromDay,
+                                @Param("toDay") long toDay);
+
+    // 原子累加；笔数回到 0 时金额直接归零，避免浮点误差残留
+    @Modifying
+    @Query(value = """
+        INSERT INTO daily_spend (user_id, epoch_day, category_id, total, transaction_count)
+        VALUES (:userId, :epochDay, :categoryId, :total, :count)
+        ON CONFLICT (user_id, epoch_day, category_id) DO UPDATE SET
+            transaction_count = transaction_count + excluded.transaction_count,
+            total = CASE WHEN transaction_count + excluded.transaction_count = 0 THEN 0
+                         ELSE total + excluded.total END
+        """, nativeQuery = true)
+    void addDelta(@Param("userId") String userId,
+                  @Param("epochDay") long epochDay,
+                  @Param("categoryId") String categoryId,
+                  @Param("total") double total,
+                  @Param("count") long count);
+}
@@ -0,0 +1,42 @@
+package com.accounting.repository;
+
+import com.accounting.model.MonthlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MonthlyRollupRepository extends JpaRepository<MonthlyRollup, MonthlyRollup.Key> {
+
+    @Query("SELECT r FROM MonthlyRollup r WHERE r.userId = :userId AND r.year BETWEEN :fromYear AND :toYear")
+    List<MonthlyRollup> findByUserIdAndYearBetween(@Param("userId") String userId,
+                                                   @Param("fromYear") int fromYear,
+                                                   @Param("toYear") int toYear);
+
+    @Query("SELECT r FROM MonthlyRollup r WHERE r.userId = :userId AND r.year = :year AND r.month = :month")
+    List<MonthlyRollup> findByUserIdAndMonth(@Param("userId") String userId,
+                                             @Param("year") int year,
+                                             @Param("month") int month);
+
+    // 原子累加；笔数回到 0 时金额直接归零，避免浮点误差残留
+    @Modifying
+    @Query(value = """
+        INSERT INTO monthly_rollups (user_id, year, month, type, category_id, total, transaction_count)
+        VALUES (:userId, :year, :month, :type, :categoryId, :total, :count)
+        ON CONFLICT (user_id, year, month, type, category_id) DO UPDATE SET
+            transaction_count = transaction_count + excluded.transaction_count,
+            total = CASE WHEN transaction_count + excluded.transaction_count = 0 THEN 0
+                         ELSE total + excluded.total END
+        """, nativeQuery = true)
+    void addDelta(@Param("userId") String userId,
+                  @Param("year") int year,
+                  @Param("month") int month,
+                  @Param("type") String type,
+                  @Param("categoryId") String categoryId,
+                  @Param("total") double total,
+                  @Param("count") long count);
+}
@@ -1,19 +1,37 @@
 package com.accounting.repository;
 
 import com.accounting.model.SyncLog;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface SyncLogRepository extends JpaRepository<SyncLog, String> {
     
-    @Query("SELECT s FROM SyncLog s WHERE s.userId = :userId AND s.version > :lastVersion ORDER BY s.version ASC")
-    List<SyncLog> findChanges(@Param("userId") String userId, @Param("lastVersion") Long lastVersion);
+    // 只取 (lastVersion, upTo] 区间内的变更，upTo 为版本号低水位
+    @Query("SELECT s FROM SyncLog s WHERE s.userId = :userId AND s.version > :lastVersion AND s.version <= :upTo ORDER BY s.version ASC")
+    List<SyncLog> findChanges(@Param("userId") String userId, @Param("lastVersion") Long lastVersion, @Param("upTo") Long upTo);
+
+    // 分页拉取：只取 pageable 指定的条数，不执行 count 查询
+    @Query("SELECT s FROM SyncLog s WHERE s.userId = :userId AND s.version > :lastVersion AND s.version <= :upTo ORDER BY s.version ASC")
+    List<SyncLog> findChanges(@Param("userId") String userId, @Param("lastVersion") Long lastVersion, @Param("upTo") Long upTo, Pageable pageable);
 
     @Query("SELECT COALESCE(MAX(s.version), 0) FROM SyncLog s WHERE s.userId = :userId")
     Long getMaxVersion(@Param("userId") String userId);
+
+    // 删除早于水位线、且同一实体已有更高版本的日志；每个实体的最新一条（含删除标记）始终保留
+    @Modifying
+    @Query("""
+        DELETE FROM SyncLog s
+        WHERE s.timestamp < :watermark
+          AND EXISTS (SELECT 1 FROM SyncLog n
+                      WHERE n.userId = s.userId AND n.entityId = s.entityId AND n.version > s.version)
+        """)
+    int deleteSupersededBefore(@Param("watermark") LocalDateTime watermark);
 }
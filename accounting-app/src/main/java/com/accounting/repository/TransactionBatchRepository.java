@@ -0,0 +1,23 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+
+import java.util.List;
+
+/**
+ * 交易的批量写入
+ * 使用 JDBC 批处理，整批记录只需少量数据库往返
+ */
+public interface TransactionBatchRepository {
+    /**
+     * 批量插入新记录，调用方需保证这些 ID 在库中不存在
+     */
+    void insertAll(List<Transaction> transactions);
+
+    /**
+     * 批量执行 LWW 条件更新：仅当传入的 updatedAt 比库中记录更新时才覆盖（不修改 createdAt）
+     * 执行后会清空持久化上下文，之前读出的实体不再受管理
+     * @return 与参数顺序一致的每条记录影响行数，0 表示库中数据更新或记录不存在
+     */
+    int[] updateAllIfNewer(List<Transaction> transactions);
+}
@@ -0,0 +1,82 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+import com.accounting.model.converter.LocalDateTimeEpochConverter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+
+import java.sql.PreparedStatement;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class TransactionBatchRepositoryImpl implements TransactionBatchRepository {
+    // 与 hibernate.jdbc.batch_size 保持一致
+    private static final int BATCH_SIZE = 100;
+    // 与 TransactionRepository.updateIfNewer 的条件相同
+    private static final String UPDATE_IF_NEWER_SQL =
+        "UPDATE transactions SET type = ?, amount = ?, category_id = ?, description = ?, date = ?, " +
+        "updated_at = ?, tags = ?, user_id = ? WHERE id = ? AND (updated_at IS NULL OR updated_at < ?)";
+
+    private static final LocalDateTimeEpochConverter DATE_CONVERTER = new LocalDateTimeEpochConverter();
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void insertAll(List<Transaction> transactions) {
+        // ID 由客户端指定，save() 会先 SELECT 判断是否存在；这里直接 persist
+        // 写入后立即脱离持久化上下文，后续查询触发的自动 flush 不必逐个脏检查
+        for (int i = 0; i < transactions.size(); i++) {
+            entityManager.persist(transactions.get(i));
+            if ((i + 1) % BATCH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Override
+    public int[] updateAllIfNewer(List<Transaction> transactions) {
+        int[] counts = new int[transactions.size()];
+        if (transactions.isEmpty()) return counts;
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(UPDATE_IF_NEWER_SQL)) {
+                for (int start = 0; start < transactions.size(); start += BATCH_SIZE) {
+                    int end = Math.min(start + BATCH_SIZE, transactions.size());
+                    for (Transaction t : transactions.subList(start, end)) {
+                        ps.setString(1, t.getType() != null ? t.getType().name() : null);
+                        ps.setDouble(2, t.getAmount());
+                        ps.setString(3, t.getCategoryId());
+                        ps.setString(4, t.getDescription());
+                        setEpoch(ps, 5, t.getDate());
+                        setEpoch(ps, 6, t.getUpdatedAt());
+                        ps.setString(7, t.getTags());
+                        ps.setString(8, t.getUserId());
+                        ps.setString(9, t.getId());
+                        setEpoch(ps, 10, t.getUpdatedAt());
+                        ps.addBatch();
+                    }
+                    int[] batch = ps.executeBatch();
+                    System.arraycopy(batch, 0, counts, start, batch.length);
+                }
+            }
+        });
+        // 绕过了持久化上下文，丢弃可能已过期的实体
+        entityManager.clear();
+        return counts;
+    }
+
+    private static void setEpoch(PreparedStatement ps, int index, LocalDateTime value) throws java.sql.SQLException {
+        Long epoch = DATE_CONVERTER.convertToDatabaseColumn(value);
+        if (epoch == null) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, epoch);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 交易分页游标
+ * 基于 (date, id) 的键集分页位置，编码为不透明字符串返回给客户端
+ */
+public class TransactionCursor {
+    private static final String NULL_DATE = "~";
+
+    private final LocalDateTime date;
+    private final String id;
+
+    public TransactionCursor(LocalDateTime date, String id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * 以指定交易为上一页的最后一条
+     */
+    public static TransactionCursor after(Transaction transaction) {
+        return new TransactionCursor(transaction.getDate(), transaction.getId());
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        String raw = (date == null ? NULL_DATE : date.toString()) + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析客户端传回的游标
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public static TransactionCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            if (sep < 0) throw new IllegalArgumentException("invalid cursor");
+            String datePart = raw.substring(0, sep);
+            LocalDateTime date = NULL_DATE.equals(datePart) ? null : LocalDateTime.parse(datePart);
+            return new TransactionCursor(date, raw.substring(sep + 1));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 交易的键集分页与流式查询
+ * 结果均按 (date, id) 升序排列，date 为空的记录排在最前
+ */
+public interface TransactionQueryRepository {
+    /**
+     * 查询游标之后最多 limit 条记录，不执行 count 查询
+     */
+    List<Transaction> findPage(Specification<Transaction> spec, TransactionCursor after, int limit);
+
+    /**
+     * 流式读取所有匹配记录，读出的实体立即脱离持久化上下文，需在事务内消费并关闭
+     */
+    Stream<Transaction> streamAll(Specification<Transaction> spec);
+}
@@ -0,0 +1,69 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class TransactionQueryRepositoryImpl implements TransactionQueryRepository {
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Transaction> findPage(Specification<Transaction> spec, TransactionCursor after, int limit) {
+        Specification<Transaction> keyset = Specification.where(spec).and(after(after));
+        return entityManager.createQuery(orderedQuery(keyset))
+            .setMaxResults(limit)
+            .getResultList();
+    }
+
+    @Override
+    public Stream<Transaction> streamAll(Specification<Transaction> spec) {
+        return entityManager.createQuery(orderedQuery(spec))
+            .setHint("org.hibernate.fetchSize", STREAM_FETCH_SIZE)
+            .getResultStream()
+            .peek(entityManager::detach);
+    }
+
+    private CriteriaQuery<Transaction> orderedQuery(Specification<Transaction> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Transaction> query = cb.createQuery(Transaction.class);
+        Root<Transaction> root = query.from(Transaction.class);
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, cb);
+            if (predicate != null) query.where(predicate);
+        }
+        // SQLite 升序时 NULL 排在最前，与游标条件保持一致
+        query.orderBy(cb.asc(root.get("date")), cb.asc(root.get("id")));
+        return query;
+    }
+
+    private static Specification<Transaction> after(TransactionCursor cursor) {
+        if (cursor == null) return null;
+        return (root, query, cb) -> {
+            Path<LocalDateTime> date = root.get("date");
+            Path<String> id = root.get("id");
+            if (cursor.getDate() == null) {
+                return cb.or(
+                    cb.isNotNull(date),
+                    cb.and(cb.isNull(date), cb.greaterThan(id, cursor.getId())));
+            }
+            // 等价于 date > d OR (date = d AND id > i)；单独的 date >= d 条件让 SQLite 从游标处定位索引，
+            // 否则只能从头扫描日期索引，越往后翻页越慢
+            return cb.and(
+                cb.greaterThanOrEqualTo(date, cursor.getDate()),
+                cb.or(cb.greaterThan(date, cursor.getDate()), cb.greaterThan(id, cursor.getId())));
+        };
+    }
+}
@@ -2,6 +2,7 @@ package com.accounting.repository;
 
 import com.accounting.model.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,14 +12,28 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface TransactionRepository extends JpaRepository<Transaction, String> {
+public interface TransactionRepository extends JpaRepository<Transaction, String>, JpaSpecificationExecutor<Transaction>,
+        TransactionQueryRepository, TransactionBatchRepository {
     List<Transaction> findByUserId(String userId);
+    long countByUserId(String userId);
     List<Transaction> findByCategoryId(String categoryId);
     
     // 使用@Param确保JPA命名参数绑定正确
     @Query("SELECT t FROM Transaction t WHERE t.date BETWEEN :startDate AND :endDate")
     List<Transaction> findByDateRange(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
     
+    // 用户在时间范围内某类型的金额合计，走 (用户, 日期) 与 (用户, 分类, 日期) 索引
+    @Query("SELECT COALESCE(SUM(t.amount), 0) FROM Transaction t WHERE t.userId = :userId AND t.type = :type " +
+           "AND t.date BETWEEN :startDate AND :endDate")
+    double sumAmount(@Param("userId") String userId, @Param("type") Transaction.TransactionType type,
+                     @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+    
+    @Query("SELECT COALESCE(SUM(t.amount), 0) FROM Transaction t WHERE t.userId = :userId AND t.categoryId = :categoryId " +
+           "AND t.type = :type AND t.date BETWEEN :startDate AND :endDate")
+    double sumAmountByCategory(@Param("userId") String userId, @Param("categoryId") String categoryId,
+                               @Param("type") Transaction.TransactionType type,
+                               @Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+    
     // 包含历史公共记录（userId为null）以兼容旧数据
     @Query("SELECT t FROM Transaction t WHERE t.userId IS NULL OR t.userId = :userId")
     List<Transaction> findVisibleForUser(@Param("userId") String userId);
@@ -0,0 +1,147 @@
+package com.accounting.service;
+
+import com.accounting.model.Transaction;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 预算提醒推送
+ * 交易写入提交后评估受影响的预算，使用率越过阈值时向该用户的 SSE 连接推送 budget-alert 事件。
+ * 没有订阅连接的用户不做评估，客户端无需再轮询预算使用情况。
+ * 评估与推送在单独的提醒线程中按提交顺序执行，不占用写入请求的线程；
+ * 待处理的评估超过队列容量时丢弃新的评估，提醒是尽力而为的。
+ */
+@Service
+public class BudgetAlertService {
+    private final BudgetService budgetService;
+    private final double[] thresholds;
+    private final long timeoutMillis;
+    private final Map<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher;
+
+    public BudgetAlertService(BudgetService budgetService,
+                              @Value("${budget.alerts.thresholds:0.8,1.0}") double[] thresholds,
+                              @Value("${budget.alerts.timeout-ms:1800000}") long timeoutMillis,
+                              @Value("${budget.alerts.queue-capacity:1000}") int queueCapacity) {
+        this.budgetService = budgetService;
+        this.thresholds = thresholds;
+        this.timeoutMillis = timeoutMillis;
+        this.dispatcher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread t = new Thread(r, "budget-alerts");
+                t.setDaemon(true);
+                return t;
+            }, (task, executor) -> System.err.println("预算提醒队列已满，丢弃本次评估"));
+    }
+
+    /**
+     * 为用户建立提醒连接；超时或断开后客户端重新连接即可
+     */
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        subscribers.compute(userId, (k, list) -> {
+            List<SseEmitter> emitters = list != null ? list : new CopyOnWriteArrayList<>();
+            emitters.add(emitter);
+            return emitters;
+        });
+        emitter.onCompletion(() -> unsubscribe(userId, emitter));
+        emitter.onTimeout(() -> unsubscribe(userId, emitter));
+        emitter.onError(e -> unsubscribe(userId, emitter));
+        return emitter;
+    }
+
+    /**
+     * 交易写入提交后按用户评估，只处理有订阅连接的用户
+     * 写入线程只筛选用户并入队，评估与推送交给提醒线程
+     */
+    @TransactionalEventListener
+    public void onTransactionsChanged(TransactionsChangedEvent event) {
+        if (subscribers.isEmpty()) return;
+        Set<String> users = new HashSet<>();
+        collectSubscribed(users, event.getRemoved());
+        collectSubscribed(users, event.getAdded());
+        if (users.isEmpty()) return;
+        dispatcher.execute(() -> evaluate(users, event));
+    }
+
+    private void evaluate(Set<String> users, TransactionsChangedEvent event) {
+        for (String userId : users) {
+            List<BudgetService.BudgetAlert> alerts;
+            try {
+                alerts = budgetService.findCrossedThresholds(userId, event.getRemoved(), event.getAdded(), thresholds);
+            } catch (Exception e) {
+                System.err.println("评估预算提醒失败: " + e.getMessage());
+                continue;
+            }
+            for (BudgetService.BudgetAlert alert : alerts) {
+                send(userId, () -> SseEmitter.event().name("budget-alert").data(alert, MediaType.APPLICATION_JSON));
+            }
+        }
+    }
+
+    /**
+     * 定期发送注释行保持连接，并清理已断开的连接
+     */
+    @Scheduled(fixedDelayString = "${budget.alerts.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (String userId : subscribers.keySet()) {
+            send(userId, () -> SseEmitter.event().comment("ping"));
+        }
+    }
+
+    /**
+     * 停止提醒线程，尚未处理的评估直接丢弃
+     */
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+    }
+
+    private void collectSubscribed(Set<String> users, List<Transaction> transactions) {
+        for (Transaction t : transactions) {
+            if (t != null && t.getUserId() != null && t.getType() == Transaction.TransactionType.EXPENSE
+                    && subscribers.containsKey(t.getUserId())) {
+                users.add(t.getUserId());
+            }
+        }
+    }
+
+    // 事件构建器在 send 时会被消费，每个连接单独构建
+    private void send(String userId, Supplier<SseEmitter.SseEventBuilder> event) {
+        List<SseEmitter> emitters = subscribers.get(userId);
+        if (emitters == null) return;
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(event.get());
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开
+                unsubscribe(userId, emitter);
+            }
+        }
+    }
+
+    private void unsubscribe(String userId, SseEmitter emitter) {
+        subscribers.computeIfPresent(userId, (k, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
@@ -1,15 +1,22 @@
 package com.accounting.service;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.accounting.model.Budget;
+import com.accounting.model.MonthlyRollup;
 import com.accounting.model.Transaction;
 import com.accounting.repository.BudgetRepository;
 
@@ -22,10 +29,18 @@ import com.accounting.repository.BudgetRepository;
 public class BudgetService {
     private final BudgetRepository budgetRepository;
     private final TransactionService transactionService;
+    private final DataVersionService dataVersions;
+    private final MonthlyRollupService rollupService;
+    private final SpendCounterService spendCounters;
     
-    public BudgetService(BudgetRepository budgetRepository, TransactionService transactionService) {
+    public BudgetService(BudgetRepository budgetRepository, TransactionService transactionService,
+                         DataVersionService dataVersions, MonthlyRollupService rollupService,
+                         SpendCounterService spendCounters) {
         this.budgetRepository = budgetRepository;
         this.transactionService = transactionService;
+        this.dataVersions = dataVersions;
+        this.rollupService = rollupService;
+        this.spendCounters = spendCounters;
     }
     
     /**
@@ -35,6 +50,8 @@ public class BudgetService {
         if (budget.getId() == null || budget.getId().isEmpty()) {
             budget.setId(UUID.randomUUID().toString());
         }
+        refreshSpent(budget);
+        dataVersions.budgetsChanged();
         return budgetRepository.save(budget);
     }
     
@@ -44,6 +61,7 @@ public class BudgetService {
     public boolean deleteBudget(String budgetId) {
         if (budgetRepository.existsById(budgetId)) {
             budgetRepository.deleteById(budgetId);
+            dataVersions.budgetsChanged();
             return true;
         }
         return false;
@@ -55,6 +73,8 @@ public class BudgetService {
     public Budget updateBudget(String budgetId, Budget updatedBudget) {
         return budgetRepository.findById(budgetId).map(existing -> {
             updatedBudget.setId(budgetId);
+            refreshSpent(updatedBudget);
+            dataVersions.budgetsChanged();
             return budgetRepository.save(updatedBudget);
         }).orElse(null);
     }
@@ -62,43 +82,34 @@ public class BudgetService {
     /**
      * 根据ID查询预算
      */
+    @Transactional(readOnly = true)
     public Budget getBudgetById(String budgetId) {
         return budgetRepository.findById(budgetId).orElse(null);
     }
     
     /**
      * 获取指定月份的总预算
+     * 月度预算由唯一索引保证不重复，读取不再顺带清理，可以与其它读请求并发
      */
+    @Transactional(readOnly = true)
     public Budget getTotalBudget(String userId, int year, int month) {
-        List<Budget> budgets = budgetRepository.findByUserIdAndCategoryIdIsNullAndYearAndMonth(userId, year, month);
-        if (budgets.isEmpty()) return null;
-        if (budgets.size() > 1) {
-            // 自动清理重复数据
-            for (int i = 1; i < budgets.size(); i++) {
-                budgetRepository.delete(budgets.get(i));
-            }
-        }
-        return budgets.get(0);
+        List<Budget> budgets = budgetRepository.findMonthlyTotal(userId, year, month);
+        return budgets.isEmpty() ? null : budgets.get(0);
     }
     
     /**
      * 获取指定月份的分类预算
      */
+    @Transactional(readOnly = true)
     public Budget getCategoryBudget(String userId, String categoryId, int year, int month) {
-        List<Budget> budgets = budgetRepository.findByUserIdAndCategoryIdAndYearAndMonth(userId, categoryId, year, month);
-        if (budgets.isEmpty()) return null;
-        if (budgets.size() > 1) {
-            // 自动清理重复数据
-            for (int i = 1; i < budgets.size(); i++) {
-                budgetRepository.delete(budgets.get(i));
-            }
-        }
-        return budgets.get(0);
+        List<Budget> budgets = budgetRepository.findMonthlyByCategory(userId, categoryId, year, month);
+        return budgets.isEmpty() ? null : budgets.get(0);
     }
     
     /**
      * 获取用户的所有预算
      */
+    @Transactional(readOnly = true)
     public List<Budget> getBudgetsByUserId(String userId) {
         return budgetRepository.findByUserId(userId);
     }
@@ -106,114 +117,180 @@ public class BudgetService {
     /**
      * 获取指定月份的预算列表
      */
+    @Transactional(readOnly = true)
     public List<Budget> getBudgetsByMonth(String userId, int year, int month) {
         return budgetRepository.findByUserIdAndYearAndMonth(userId, year, month);
     }
     
     /**
-     * 计算已用金额
+     * 计算已用金额（当前用户该月的支出，分类为空表示汇总）
      */
+    @Transactional(readOnly = true)
     public double calculateUsedAmount(String userId, String categoryId, int year, int month) {
-        YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        // 先按月份范围获取交易，再基于用户、类型与分类在内存中过滤
-        // 如需更高性能，可在TransactionRepository中增加按用户与分类的范围查询方法
-        List<Transaction> transactions = transactionService.getTransactionsByDateRange(startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        
-        return transactions.stream()
-            .filter(t -> userId.equals(t.getUserId())) // 仅统计当前用户的交易
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE) // 仅统计支出
-            .filter(t -> categoryId == null || categoryId.equals(t.getCategoryId())) // 分类为空表示汇总
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        return usedAmount(expensesByCategory(userId, year, month), categoryId);
     }
     
     /**
-     * 检查是否超额
+     * 一次评估某用户某月的全部月度预算
+     * 预算只查询一次，支出从月度汇总表按分类一次读出，不再逐个预算扫描当月全部交易；
+     * 周期型预算的统计区间不是自然月，不在此评估
      */
-    public boolean isOverBudget(String userId, String categoryId, int year, int month) {
+    @Transactional(readOnly = true)
+    public List<BudgetUsage> evaluateMonth(String userId, int year, int month) {
+        List<Budget> budgets = budgetRepository.findMonthly(userId, year, month);
+        List<BudgetUsage> result = new ArrayList<>(budgets.size());
+        if (budgets.isEmpty()) {
+            return result;
+        }
+        Map<String, Double> expenses = expensesByCategory(userId, year, month);
+        for (Budget b : budgets) {
+            result.add(new BudgetUsage(b, usedAmount(expenses, b.getCategoryId())));
+        }
+        return result;
+    }
+    
+    /**
+     * 评估单个月度预算，没有对应预算时返回 null
+     */
+    @Transactional(readOnly = true)
+    public BudgetUsage evaluate(String userId, String categoryId, int year, int month) {
         Budget budget = categoryId == null ? 
             getTotalBudget(userId, year, month) : 
             getCategoryBudget(userId, categoryId, year, month);
-        
         if (budget == null) {
-            return false;
+            return null;
         }
-        
-        double usedAmount = calculateUsedAmount(userId, categoryId, year, month);
-        return usedAmount > budget.getAmount();
+        return new BudgetUsage(budget, calculateUsedAmount(userId, categoryId, year, month));
+    }
+    
+    /**
+     * 检查是否超额
+     */
+    @Transactional(readOnly = true)
+    public boolean isOverBudget(String userId, String categoryId, int year, int month) {
+        BudgetUsage usage = evaluate(userId, categoryId, year, month);
+        return usage != null && usage.over;
     }
     
     /**
      * 获取超额金额
      */
+    @Transactional(readOnly = true)
     public double getOverBudgetAmount(String userId, String categoryId, int year, int month) {
-        Budget budget = categoryId == null ? 
-            getTotalBudget(userId, year, month) : 
-            getCategoryBudget(userId, categoryId, year, month);
-        
-        if (budget == null) {
-            return 0;
-        }
-        
-        double usedAmount = calculateUsedAmount(userId, categoryId, year, month);
-        double overAmount = usedAmount - budget.getAmount();
-        return Math.max(0, overAmount);
+        BudgetUsage usage = evaluate(userId, categoryId, year, month);
+        return usage != null ? usage.overAmount : 0;
     }
     
     /**
      * 获取预算使用率（0-1之间）
      */
+    @Transactional(readOnly = true)
     public double getBudgetUsageRate(String userId, String categoryId, int year, int month) {
-        Budget budget = categoryId == null ? 
-            getTotalBudget(userId, year, month) : 
-            getCategoryBudget(userId, categoryId, year, month);
-        
-        if (budget == null || budget.getAmount() == 0) {
-            return 0;
+        BudgetUsage usage = evaluate(userId, categoryId, year, month);
+        return usage != null ? usage.rate : 0;
+    }
+    
+    /**
+     * 按分类汇总某用户某月的支出，无分类的交易键为空字符串
+     */
+    private Map<String, Double> expensesByCategory(String userId, int year, int month) {
+        Map<String, Double> expenses = new HashMap<>();
+        for (MonthlyRollup r : rollupService.findByMonth(userId, year, month)) {
+            if (MonthlyRollupService.isType(r, Transaction.TransactionType.EXPENSE)) {
+                expenses.merge(r.getCategoryId(), r.getTotal(), Double::sum);
+            }
+        }
+        return expenses;
+    }
+    
+    private static double usedAmount(Map<String, Double> expenses, String categoryId) {
+        if (categoryId != null) {
+            return expenses.getOrDefault(categoryId, 0.0);
         }
-        
-        double usedAmount = calculateUsedAmount(userId, categoryId, year, month);
-        return Math.min(1.0, usedAmount / budget.getAmount());
+        double total = 0;
+        for (double amount : expenses.values()) {
+            total += amount;
+        }
+        return total;
     }
     
     /**
      * 设置月度预算
+     * 单条语句插入或更新，并发设置同一个月份也只会留下一条
      */
     public Budget setMonthlyBudget(String userId, String categoryId, double amount, int year, int month) {
-        Budget existingBudget = categoryId == null ? 
-            getTotalBudget(userId, year, month) : 
-            getCategoryBudget(userId, categoryId, year, month);
-        
-        if (existingBudget != null) {
-            existingBudget.setAmount(amount);
-            return budgetRepository.save(existingBudget);
-        } else {
-            Budget newBudget = new Budget(userId, categoryId, amount, year, month);
-            return addBudget(newBudget);
+        String id = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.now();
+        dataVersions.budgetsChanged();
+        if (categoryId == null || categoryId.isEmpty()) {
+            budgetRepository.upsertMonthlyTotal(id, userId, amount, year, month, now);
+            return getTotalBudget(userId, year, month);
         }
+        budgetRepository.upsertMonthlyCategory(id, userId, categoryId, amount, year, month, now);
+        return getCategoryBudget(userId, categoryId, year, month);
     }
 
     /**
      * --------------- Migration additions: period-based budgets and analytics ---------------
      */
 
+    /**
+     * 查找在指定日期生效的周期型预算
+     * 结束日期随预算保存写入数据库，按 (用户, 分类, 开始, 结束) 索引做区间查询，不再加载用户全部预算
+     */
+    @Transactional(readOnly = true)
     public List<Budget> findActiveBudgets(String userId, String categoryId, LocalDate atDate) {
         LocalDate effectiveAt = atDate == null ? LocalDate.now() : atDate;
-        List<Budget> all = budgetRepository.findByUserId(userId == null ? "" : userId);
-        return all.stream()
-            .filter(b -> (categoryId == null || categoryId.equals(b.getCategoryId())))
-            .filter(b -> {
-                LocalDate start = b.getStartDate();
-                LocalDate end = b.getEndDate();
-                if (start == null || end == null) return false;
-                return (!effectiveAt.isBefore(start)) && (!effectiveAt.isAfter(end));
-            })
-            .collect(Collectors.toList());
+        String owner = userId == null ? "" : userId;
+        return categoryId == null
+            ? budgetRepository.findActive(owner, effectiveAt)
+            : budgetRepository.findActiveByCategory(owner, categoryId, effectiveAt);
+    }
+
+    /**
+     * 为升级前保存、尚无结束日期的周期型预算补写结束日期
+     */
+    public int backfillEndDates() {
+        List<Budget> missing = budgetRepository.findByStartDateIsNotNullAndEndDateIsNull();
+        List<Budget> changed = new ArrayList<>();
+        for (Budget b : missing) {
+            b.refreshEndDate();
+            // 周期不完整的预算算不出结束日期，保持为空
+            if (b.getEndDate() != null) {
+                changed.add(b);
+            }
+        }
+        budgetRepository.saveAll(changed);
+        return changed.size();
+    }
+
+    /**
+     * 为尚未计算已用金额的周期型预算（升级前保存的）从每日支出表补算一次
+     */
+    public int backfillSpent() {
+        List<Budget> missing = budgetRepository.findByUserIdIsNotNullAndEndDateIsNotNullAndSpentIsNull();
+        for (Budget b : missing) {
+            refreshSpent(b);
+        }
+        budgetRepository.saveAll(missing);
+        return missing.size();
+    }
+
+    /**
+     * 按当前周期从每日支出表重算已用金额；之后由交易写入增量维护。
+     * 没有用户或周期不完整的预算不维护计数
+     */
+    private void refreshSpent(Budget b) {
+        LocalDate start = b.getStartDate();
+        LocalDate end = b.getEndDate();
+        if (b.getUserId() == null || start == null || end == null) {
+            b.setSpent(null);
+            return;
+        }
+        b.setSpent(spendCounters.spentBetween(b.getUserId(), b.getCategoryId(), start, end));
     }
 
+    @Transactional(readOnly = true)
     public BudgetStats calculateStats(Budget b) {
         BudgetStats s = new BudgetStats();
         s.budget = b;
@@ -252,16 +329,17 @@ public class BudgetService {
         LocalDate start = b.getStartDate();
         LocalDate end = b.getEndDate();
         if (start == null || end == null) return 0.0;
-        List<Transaction> txs = transactionService.getTransactionsByDateRange(start.atStartOfDay(), end.atTime(23, 59, 59));
-        return txs.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .filter(t -> b.getUserId() == null || b.getUserId().equals(t.getUserId()))
-            .filter(t -> b.getCategoryId() == null || b.getCategoryId().equals(t.getCategoryId()))
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        // 已用金额计数随交易写入维护，直接读取
+        if (b.getSpent() != null) return b.getSpent();
+        return calculateAmountSpentInRange(b, start, end);
     }
 
     private double calculateAmountSpentInRange(Budget b, LocalDate startInclusive, LocalDate endInclusive) {
+        if (b.getUserId() != null) {
+            // 按日汇总，区间有多少天就读多少天的行
+            return spendCounters.spentBetween(b.getUserId(), b.getCategoryId(), startInclusive, endInclusive);
+        }
+        // 没有用户的旧预算统计所有用户的支出
         List<Transaction> txs = transactionService.getTransactionsByDateRange(startInclusive.atStartOfDay(), endInclusive.atTime(23, 59, 59));
         return txs.stream()
             .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
@@ -271,6 +349,7 @@ public class BudgetService {
             .sum();
     }
 
+    @Transactional(readOnly = true)
     public boolean canConsume(Transaction t) {
         if (t == null || t.getType() != Transaction.TransactionType.EXPENSE) return true;
         String cat = t.getCategoryId();
@@ -281,13 +360,150 @@ public class BudgetService {
         List<Budget> actives = findActiveBudgets(uid, cat, at);
         if (actives.isEmpty()) return true;
 
+        // 只需要剩余额度，不计算近 7/30 天等统计项
         for (Budget b : actives) {
-            BudgetStats s = calculateStats(b);
-            if (s.remaining >= t.getAmount()) return true;
+            double remaining = b.getAmount() - calculateAmountSpentForBudget(b);
+            if (remaining >= t.getAmount()) return true;
         }
         return false;
     }
 
+    /**
+     * 找出一次已提交的交易变更让哪些预算越过了使用率阈值
+     * 变更后的已用金额读月度汇总或预算计数，减去本次变更的支出增量即为变更前；
+     * 变更前低于阈值、变更后达到阈值才算越过，一个预算只报告越过的最高阈值。
+     * 在交易事务提交后调用，需要新开只读事务
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public List<BudgetAlert> findCrossedThresholds(String userId, Collection<Transaction> removed,
+                                                   Collection<Transaction> added, double[] thresholds) {
+        // 本次变更的支出增量，按月与按日分别汇总到分类，无分类的键为空字符串
+        Map<YearMonth, Map<String, Double>> monthly = new HashMap<>();
+        TreeMap<LocalDate, Map<String, Double>> daily = new TreeMap<>();
+        for (Transaction t : removed) {
+            collectExpense(monthly, daily, userId, t, -1);
+        }
+        for (Transaction t : added) {
+            collectExpense(monthly, daily, userId, t, 1);
+        }
+        List<BudgetAlert> alerts = new ArrayList<>();
+        for (Map.Entry<YearMonth, Map<String, Double>> entry : monthly.entrySet()) {
+            int year = entry.getKey().getYear();
+            int month = entry.getKey().getMonthValue();
+            Map<String, Double> deltas = entry.getValue();
+            Map<String, Double> expenses = null;
+            Budget total = getTotalBudget(userId, year, month);
+            if (total != null) {
+                expenses = expensesByCategory(userId, year, month);
+                checkCrossed(alerts, total, usedAmount(expenses, null), usedAmount(deltas, null), thresholds);
+            }
+            for (Map.Entry<String, Double> delta : deltas.entrySet()) {
+                if (delta.getKey().isEmpty()) continue;
+                Budget budget = getCategoryBudget(userId, delta.getKey(), year, month);
+                if (budget == null) continue;
+                if (expenses == null) {
+                    expenses = expensesByCategory(userId, year, month);
+                }
+                checkCrossed(alerts, budget, usedAmount(expenses, delta.getKey()), delta.getValue(), thresholds);
+            }
+        }
+        if (!daily.isEmpty()) {
+            for (Budget b : budgetRepository.findOverlapping(userId, daily.firstKey(), daily.lastKey())) {
+                double delta = 0;
+                for (Map<String, Double> deltas : daily.subMap(b.getStartDate(), true, b.getEndDate(), true).values()) {
+                    delta += usedAmount(deltas, b.getCategoryId());
+                }
+                if (delta > 0) {
+                    checkCrossed(alerts, b, calculateAmountSpentForBudget(b), delta, thresholds);
+                }
+            }
+        }
+        return alerts;
+    }
+
+    private static void collectExpense(Map<YearMonth, Map<String, Double>> monthly,
+                                       Map<LocalDate, Map<String, Double>> daily,
+                                       String userId, Transaction t, int sign) {
+        if (t == null || t.getDate() == null || t.getType() != Transaction.TransactionType.EXPENSE
+                || !userId.equals(t.getUserId())) return;
+        String category = t.getCategoryId() != null ? t.getCategoryId() : "";
+        double amount = sign * t.getAmount();
+        monthly.computeIfAbsent(YearMonth.from(t.getDate()), k -> new HashMap<>()).merge(category, amount, Double::sum);
+        daily.computeIfAbsent(t.getDate().toLocalDate(), k -> new HashMap<>()).merge(category, amount, Double::sum);
+    }
+
+    private static void checkCrossed(List<BudgetAlert> alerts, Budget b, double used, double delta,
+                                     double[] thresholds) {
+        if (delta <= 0 || b.getAmount() <= 0) return;
+        double before = used - delta;
+        double crossed = -1;
+        for (double threshold : thresholds) {
+            double limit = threshold * b.getAmount();
+            if (before < limit && used >= limit && threshold > crossed) {
+                crossed = threshold;
+            }
+        }
+        if (crossed >= 0) {
+            alerts.add(new BudgetAlert(b, crossed, used));
+        }
+    }
+
+    /**
+     * 月度预算的使用情况
+     */
+    public static class BudgetUsage {
+        public String budgetId;
+        public String categoryId;
+        public int year;
+        public int month;
+        public double amount;
+        public double used;
+        public boolean over;
+        public double overAmount;
+        public double rate;
+
+        BudgetUsage(Budget b, double used) {
+            this.budgetId = b.getId();
+            this.categoryId = b.getCategoryId();
+            this.year = b.getYear();
+            this.month = b.getMonth();
+            this.amount = b.getAmount();
+            this.used = used;
+            this.over = used > b.getAmount();
+            this.overAmount = Math.max(0, used - b.getAmount());
+            this.rate = b.getAmount() == 0 ? 0 : Math.min(1.0, used / b.getAmount());
+        }
+    }
+
+    /**
+     * 预算越过使用率阈值的提醒
+     */
+    public static class BudgetAlert {
+        public String budgetId;
+        public String categoryId;
+        public int year;
+        public int month;
+        public LocalDate startDate;
+        public LocalDate endDate;
+        public double amount;
+        public double used;
+        public double threshold;
+        public double rate;
+
+        BudgetAlert(Budget b, double threshold, double used) {
+            this.budgetId = b.getId();
+            this.categoryId = b.getCategoryId();
+            this.year = b.getYear();
+            this.month = b.getMonth();
+            this.startDate = b.getStartDate();
+            this.endDate = b.getEndDate();
+            this.amount = b.getAmount();
+            this.used = used;
+            this.threshold = threshold;
+            this.rate = used / b.getAmount();
+        }
+    }
+
     public static class BudgetStats {
         public Budget budget;
         public long daysElapsed;
@@ -0,0 +1,60 @@
+package com.accounting.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 数据版本
+ * 交易数据使用用户已提交的同步版本号；预算没有同步日志，使用进程内的修订号，
+ * 每次预算写入提交后加一。修订号在重启后从 0 开始，使用方需要结合实例标识区分。
+ */
+@Service
+public class DataVersionService {
+    private final SyncVersionAllocator versionAllocator;
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong budgetRevision = new AtomicLong();
+
+    public DataVersionService(SyncVersionAllocator versionAllocator) {
+        this.versionAllocator = versionAllocator;
+    }
+
+    /**
+     * 当前进程的标识，每次启动不同
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 用户交易数据的版本
+     */
+    public long transactionVersion(String userId) {
+        return userId == null ? 0 : versionAllocator.committed(userId);
+    }
+
+    /**
+     * 预算数据的修订号
+     */
+    public long budgetRevision() {
+        return budgetRevision.get();
+    }
+
+    /**
+     * 预算被修改，在当前事务提交后递增修订号
+     */
+    public void budgetsChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    budgetRevision.incrementAndGet();
+                }
+            });
+        } else {
+            budgetRevision.incrementAndGet();
+        }
+    }
+}
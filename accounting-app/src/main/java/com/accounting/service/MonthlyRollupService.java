@@ -0,0 +1,151 @@
+package com.accounting.service;
+
+import com.accounting.model.MonthlyRollup;
+import com.accounting.model.Transaction;
+import com.accounting.repository.MonthlyRollupRepository;
+import com.accounting.repository.TransactionRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 月度汇总维护服务
+ * 交易写入方在自己的事务中调用，汇总与交易同时提交或回滚。
+ * 没有用户或日期的交易不计入汇总，与统计接口只统计本人、有日期的交易一致。
+ * 每日支出与预算已用金额由 {@link SpendCounterService} 在同一次调用中一并维护；
+ * 所有交易写入都经过这里，因此也在这里发布 {@link TransactionsChangedEvent}。
+ */
+@Service
+@Transactional(propagation = Propagation.MANDATORY)
+public class MonthlyRollupService {
+    private final MonthlyRollupRepository rollupRepository;
+    private final TransactionRepository transactionRepository;
+    private final SpendCounterService spendCounters;
+    private final ApplicationEventPublisher events;
+
+    public MonthlyRollupService(MonthlyRollupRepository rollupRepository,
+                                TransactionRepository transactionRepository,
+                                SpendCounterService spendCounters,
+                                ApplicationEventPublisher events) {
+        this.rollupRepository = rollupRepository;
+        this.transactionRepository = transactionRepository;
+        this.spendCounters = spendCounters;
+        this.events = events;
+    }
+
+    /**
+     * 计入新增的交易
+     */
+    public void added(Transaction transaction) {
+        apply(Collections.emptyList(), Collections.singletonList(transaction));
+    }
+
+    /**
+     * 扣除已删除的交易
+     */
+    public void removed(Transaction transaction) {
+        apply(Collections.singletonList(transaction), Collections.emptyList());
+    }
+
+    /**
+     * 交易被修改：扣除旧值并计入新值
+     */
+    public void replaced(Transaction before, Transaction after) {
+        apply(Collections.singletonList(before), Collections.singletonList(after));
+    }
+
+    /**
+     * 批量变更：先在内存中按汇总键合并增量，每个键只写一次
+     */
+    public void apply(Collection<Transaction> removed, Collection<Transaction> added) {
+        Map<MonthlyRollup.Key, double[]> deltas = new HashMap<>();
+        for (Transaction t : removed) {
+            accumulate(deltas, t, -1);
+        }
+        for (Transaction t : added) {
+            accumulate(deltas, t, 1);
+        }
+        for (Map.Entry<MonthlyRollup.Key, double[]> entry : deltas.entrySet()) {
+            MonthlyRollup.Key key = entry.getKey();
+            double[] delta = entry.getValue();
+            if (delta[1] == 0 && delta[0] == 0) continue;
+            rollupRepository.addDelta(key.getUserId(), key.getYear(), key.getMonth(),
+                    key.getType(), key.getCategoryId(), delta[0], (long) delta[1]);
+        }
+        spendCounters.apply(removed, added);
+        events.publishEvent(new TransactionsChangedEvent(removed, added));
+    }
+
+    /**
+     * 清空全部汇总（所有交易被清空时）
+     */
+    public void clear() {
+        rollupRepository.deleteAllInBatch();
+        spendCounters.clear();
+    }
+
+    /**
+     * 汇总表为空而库中已有交易时（升级后首次启动）从交易表重建
+     */
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (rollupRepository.count() > 0) return;
+        Specification<Transaction> owned = (root, query, cb) -> cb.and(
+                cb.isNotNull(root.get("userId")), cb.isNotNull(root.get("date")));
+        if (transactionRepository.count(owned) == 0) return;
+        Map<MonthlyRollup.Key, double[]> deltas = new HashMap<>();
+        try (Stream<Transaction> rows = transactionRepository.streamAll(owned)) {
+            rows.forEach(t -> accumulate(deltas, t, 1));
+        }
+        for (Map.Entry<MonthlyRollup.Key, double[]> entry : deltas.entrySet()) {
+            MonthlyRollup.Key key = entry.getKey();
+            rollupRepository.addDelta(key.getUserId(), key.getYear(), key.getMonth(),
+                    key.getType(), key.getCategoryId(), entry.getValue()[0], (long) entry.getValue()[1]);
+        }
+    }
+
+    /**
+     * 读取某用户若干年内的汇总行
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<MonthlyRollup> findByYears(String userId, int fromYear, int toYear) {
+        return rollupRepository.findByUserIdAndYearBetween(userId, fromYear, toYear);
+    }
+
+    /**
+     * 读取某用户某月的汇总行
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<MonthlyRollup> findByMonth(String userId, int year, int month) {
+        return rollupRepository.findByUserIdAndMonth(userId, year, month);
+    }
+
+    /**
+     * 汇总行的交易类型，空字符串表示类型为空
+     */
+    public static boolean isType(MonthlyRollup rollup, Transaction.TransactionType type) {
+        return type.name().equals(rollup.getType());
+    }
+
+    private static void accumulate(Map<MonthlyRollup.Key, double[]> deltas, Transaction t, int sign) {
+        if (t == null || t.getUserId() == null || t.getDate() == null) return;
+        MonthlyRollup.Key key = new MonthlyRollup.Key(
+                t.getUserId(),
+                t.getDate().getYear(),
+                t.getDate().getMonthValue(),
+                t.getType() != null ? t.getType().name() : "",
+                t.getCategoryId() != null ? t.getCategoryId() : "");
+        double[] delta = deltas.computeIfAbsent(key, k -> new double[2]);
+        delta[0] += sign * t.getAmount();
+        delta[1] += sign;
+    }
+}
@@ -0,0 +1,121 @@
+package com.accounting.service;
+
+import com.accounting.model.DailySpend;
+import com.accounting.model.Transaction;
+import com.accounting.repository.BudgetRepository;
+import com.accounting.repository.DailySpendRepository;
+import com.accounting.repository.TransactionRepository;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 支出计数维护服务
+ * 与月度汇总一起由交易写入方在自己的事务中驱动，维护两类计数：
+ * 每日支出表（按日累计，统计近 N 天只读 N 天的行）和周期型预算的已用金额（读预算即得，不再求和）。
+ * 只统计有用户、有日期的支出交易。
+ */
+@Service
+@Transactional(propagation = Propagation.MANDATORY)
+public class SpendCounterService {
+    private final DailySpendRepository dailyRepository;
+    private final BudgetRepository budgetRepository;
+    private final TransactionRepository transactionRepository;
+
+    public SpendCounterService(DailySpendRepository dailyRepository,
+                               BudgetRepository budgetRepository,
+                               TransactionRepository transactionRepository) {
+        this.dailyRepository = dailyRepository;
+        this.budgetRepository = budgetRepository;
+        this.transactionRepository = transactionRepository;
+    }
+
+    /**
+     * 批量变更：按（用户, 日, 分类）合并增量后写每日支出与分类预算，总预算按（用户, 日）再合并一次
+     */
+    public void apply(Collection<Transaction> removed, Collection<Transaction> added) {
+        Map<DailySpend.Key, double[]> deltas = new HashMap<>();
+        for (Transaction t : removed) {
+            accumulate(deltas, t, -1);
+        }
+        for (Transaction t : added) {
+            accumulate(deltas, t, 1);
+        }
+        Map<DailySpend.Key, Double> totals = new HashMap<>();
+        for (Map.Entry<DailySpend.Key, double[]> entry : deltas.entrySet()) {
+            DailySpend.Key key = entry.getKey();
+            double[] delta = entry.getValue();
+            if (delta[1] == 0 && delta[0] == 0) continue;
+            dailyRepository.addDelta(key.getUserId(), key.getEpochDay(), key.getCategoryId(), delta[0], (long) delta[1]);
+            if (delta[0] == 0) continue;
+            if (!key.getCategoryId().isEmpty()) {
+                budgetRepository.addSpent(key.getUserId(), key.getCategoryId(),
+                        LocalDate.ofEpochDay(key.getEpochDay()), delta[0]);
+            }
+            totals.merge(new DailySpend.Key(key.getUserId(), key.getEpochDay(), null), delta[0], Double::sum);
+        }
+        for (Map.Entry<DailySpend.Key, Double> entry : totals.entrySet()) {
+            DailySpend.Key key = entry.getKey();
+            if (entry.getValue() == 0) continue;
+            budgetRepository.addSpentToTotal(key.getUserId(), LocalDate.ofEpochDay(key.getEpochDay()), entry.getValue());
+        }
+    }
+
+    /**
+     * 清空每日支出并把预算已用金额归零（所有交易被清空时）
+     */
+    public void clear() {
+        dailyRepository.deleteAllInBatch();
+        budgetRepository.resetSpent();
+    }
+
+    /**
+     * 每日支出表为空而库中已有支出时（升级后首次启动）从交易表重建
+     */
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (dailyRepository.count() > 0) return;
+        Specification<Transaction> owned = (root, query, cb) -> cb.and(
+                cb.isNotNull(root.get("userId")), cb.isNotNull(root.get("date")),
+                cb.equal(root.get("type"), Transaction.TransactionType.EXPENSE));
+        if (transactionRepository.count(owned) == 0) return;
+        Map<DailySpend.Key, double[]> deltas = new HashMap<>();
+        try (Stream<Transaction> rows = transactionRepository.streamAll(owned)) {
+            rows.forEach(t -> accumulate(deltas, t, 1));
+        }
+        for (Map.Entry<DailySpend.Key, double[]> entry : deltas.entrySet()) {
+            DailySpend.Key key = entry.getKey();
+            dailyRepository.addDelta(key.getUserId(), key.getEpochDay(), key.getCategoryId(),
+                    entry.getValue()[0], (long) entry.getValue()[1]);
+        }
+    }
+
+    /**
+     * 某用户在日期区间内（含首尾）的支出，分类为空表示全部分类
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public double spentBetween(String userId, String categoryId, LocalDate from, LocalDate to) {
+        return categoryId == null
+            ? dailyRepository.sumBetween(userId, from.toEpochDay(), to.toEpochDay())
+            : dailyRepository.sumBetweenByCategory(userId, categoryId, from.toEpochDay(), to.toEpochDay());
+    }
+
+    private static void accumulate(Map<DailySpend.Key, double[]> deltas, Transaction t, int sign) {
+        if (t == null || t.getUserId() == null || t.getDate() == null
+                || t.getType() != Transaction.TransactionType.EXPENSE) return;
+        DailySpend.Key key = new DailySpend.Key(
+                t.getUserId(),
+                t.getDate().toLocalDate().toEpochDay(),
+                t.getCategoryId() != null ? t.getCategoryId() : "");
+        double[] delta = deltas.computeIfAbsent(key, k -> new double[2]);
+        delta[0] += sign * t.getAmount();
+        delta[1] += sign;
+    }
+}
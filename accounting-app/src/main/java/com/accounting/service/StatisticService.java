@@ -1,9 +1,9 @@
 package com.accounting.service;
 
+import com.accounting.model.MonthlyRollup;
 import com.accounting.model.Transaction;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,106 +15,80 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * 统计服务类
  * 提供消费趋势预测和数据分析功能
+ * 金额与笔数读取自月度汇总表，不再逐条扫描交易
+ * 只统计本人的交易：userId 为空的历史公共记录不计入汇总，也不计入笔数
+ * （改用汇总表之前它们会计入每个用户的统计）
  */
 @Service
 @Transactional(readOnly = true)
 public class StatisticService {
+    private static final String UNCATEGORIZED = "未分类";
+    
     private final TransactionService transactionService;
+    private final MonthlyRollupService rollupService;
+    private final StatsCache statsCache;
     
-    public StatisticService(TransactionService transactionService) {
+    public StatisticService(TransactionService transactionService, MonthlyRollupService rollupService,
+                            StatsCache statsCache) {
         this.transactionService = transactionService;
+        this.rollupService = rollupService;
+        this.statsCache = statsCache;
     }
     
     /**
      * 按月统计支出
      */
     public Map<YearMonth, Double> getMonthlyExpenses(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        // 结果依赖当前月份，月份也作为缓存参数
+        return statsCache.get(userId, "monthlyExpenses",
+            () -> monthlyTotals(userId, months, Transaction.TransactionType.EXPENSE), months, YearMonth.now());
     }
     
     /**
      * 按月统计收入
      */
     public Map<YearMonth, Double> getMonthlyIncome(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return statsCache.get(userId, "monthlyIncome",
+            () -> monthlyTotals(userId, months, Transaction.TransactionType.INCOME), months, YearMonth.now());
     }
     
     /**
      * 按分类统计支出
      */
     public Map<String, Double> getExpensesByCategory(String userId, YearMonth yearMonth) {
+        return statsCache.get(userId, "expensesByCategory", () -> expensesByCategory(userId, yearMonth), yearMonth);
+    }
+    
+    private Map<String, Double> expensesByCategory(String userId, YearMonth yearMonth) {
         Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
+        for (MonthlyRollup r : rollupService.findByMonth(userId, yearMonth.getYear(), yearMonth.getMonthValue())) {
+            if (r.getTransactionCount() <= 0 || !MonthlyRollupService.isType(r, Transaction.TransactionType.EXPENSE)) {
+                continue;
+            }
+            String category = r.getCategoryId().isEmpty() ? UNCATEGORIZED : r.getCategoryId();
+            categoryData.merge(category, r.getTotal(), Double::sum);
         }
-        
-        return categoryData;
+        // 结果会被缓存共享，返回只读视图
+        return Collections.unmodifiableMap(categoryData);
+    }
+    
+    // 最近 months 个月（含当前月）的合计，没有交易的月份为 0
+    private Map<YearMonth, Double> monthlyTotals(String userId, int months, Transaction.TransactionType type) {
+        Map<YearMonth, Double> monthlyData = new HashMap<>();
+        if (months <= 0) return Collections.unmodifiableMap(monthlyData);
+        YearMonth currentMonth = YearMonth.now();
+        YearMonth firstMonth = currentMonth.minusMonths(months - 1);
+        for (int i = 0; i < months; i++) {
+            monthlyData.put(currentMonth.minusMonths(i), 0.0);
+        }
+        for (MonthlyRollup r : rollupService.findByYears(userId, firstMonth.getYear(), currentMonth.getYear())) {
+            if (!MonthlyRollupService.isType(r, type)) continue;
+            YearMonth month = YearMonth.of(r.getYear(), r.getMonth());
+            if (monthlyData.containsKey(month)) {
+                monthlyData.merge(month, r.getTotal(), Double::sum);
+            }
+        }
+        return Collections.unmodifiableMap(monthlyData);
     }
     
     /**
@@ -199,71 +173,53 @@ public class StatisticService {
      * 获取年度统计
      */
     public Map<String, Object> getYearlyStatistics(String userId, int year) {
+        return statsCache.get(userId, "yearlyStatistics", () -> yearlyStatistics(userId, year), year);
+    }
+    
+    private Map<String, Object> yearlyStatistics(String userId, int year) {
         Map<String, Object> stats = new HashMap<>();
         
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        double totalIncome = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                return t.getDate().getYear() == year;
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpense = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                return t.getDate().getYear() == year;
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double totalIncome = 0;
+        double totalExpense = 0;
+        for (MonthlyRollup r : rollupService.findByYears(userId, year, year)) {
+            if (MonthlyRollupService.isType(r, Transaction.TransactionType.INCOME)) totalIncome += r.getTotal();
+            if (MonthlyRollupService.isType(r, Transaction.TransactionType.EXPENSE)) totalExpense += r.getTotal();
+        }
         
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", transactions.size());
+        // 笔数为本人的全部交易数，不限年份、含没有日期的交易；不含 userId 为空的公共记录
+        stats.put("transactionCount", (int) transactionService.countTransactionsByUserId(userId));
         
-        return stats;
+        return Collections.unmodifiableMap(stats);
     }
     
     /**
      * 获取月度统计
      */
     public Map<String, Object> getMonthlyStatistics(String userId, int year, int month) {
+        return statsCache.get(userId, "monthlyStatistics", () -> monthlyStatistics(userId, year, month), year, month);
+    }
+    
+    private Map<String, Object> monthlyStatistics(String userId, int year, int month) {
         Map<String, Object> stats = new HashMap<>();
-        YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
         
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        List<Transaction> monthTransactions = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .collect(Collectors.toList());
-        
-        double totalIncome = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
-        
-        double totalExpense = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double totalIncome = 0;
+        double totalExpense = 0;
+        long count = 0;
+        for (MonthlyRollup r : rollupService.findByMonth(userId, year, month)) {
+            if (MonthlyRollupService.isType(r, Transaction.TransactionType.INCOME)) totalIncome += r.getTotal();
+            if (MonthlyRollupService.isType(r, Transaction.TransactionType.EXPENSE)) totalExpense += r.getTotal();
+            count += r.getTransactionCount();
+        }
         
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", monthTransactions.size());
+        stats.put("transactionCount", (int) count);
         
-        return stats;
+        return Collections.unmodifiableMap(stats);
     }
 }
 
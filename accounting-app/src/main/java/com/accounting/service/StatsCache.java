@@ -0,0 +1,90 @@
+package com.accounting.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 统计结果缓存
+ * 键为（用户, 方法, 参数, 数据版本），数据版本取自用户已提交的同步版本号，
+ * 写入提交后版本号变化，旧结果自然失效；容量有限，按最近最少使用淘汰。
+ */
+@Service
+public class StatsCache {
+    private final SyncVersionAllocator versionAllocator;
+    private final int maxEntries;
+    private final Map<List<Object>, Object> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public StatsCache(SyncVersionAllocator versionAllocator,
+                      @Value("${stats.cache.max-entries:1000}") int maxEntries) {
+        this.versionAllocator = versionAllocator;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                if (size() > StatsCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 读取缓存，未命中时调用 loader 计算并写入
+     * 版本号在计算前读取：计算期间有写入提交时，结果记在旧版本下，不会被之后的请求使用
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String userId, String method, Supplier<T> loader, Object... args) {
+        if (userId == null) {
+            return loader.get();
+        }
+        long version = versionAllocator.committed(userId);
+        List<Object> key = Arrays.asList(userId, method, Arrays.asList(args), version);
+        synchronized (entries) {
+            Object cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return (T) cached;
+            }
+        }
+        misses.incrementAndGet();
+        T value = loader.get();
+        if (value != null) {
+            synchronized (entries) {
+                entries.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 命中率等指标
+     */
+    public Map<String, Object> getMetrics() {
+        long h = hits.get();
+        long m = misses.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return Map.of(
+            "hits", h,
+            "misses", m,
+            "evictions", evictions.get(),
+            "size", size,
+            "maxEntries", maxEntries,
+            "hitRate", h + m == 0 ? 0.0 : (double) h / (h + m)
+        );
+    }
+}
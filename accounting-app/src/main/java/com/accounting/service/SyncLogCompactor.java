@@ -0,0 +1,43 @@
+package com.accounting.service;
+
+import com.accounting.repository.SyncLogRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * 同步日志压缩任务
+ * 定期删除早于保留期、且已被同一实体更高版本覆盖的日志。
+ * 每个实体的最新一条日志始终保留，任何 lastVersion 的客户端拉取后得到的最终状态不变，
+ * 新设备从 0 开始拉取的数据量只与存活实体数及保留期内的修改量有关。
+ */
+@Service
+public class SyncLogCompactor {
+    private final SyncLogRepository syncLogRepository;
+    private final TransactionTemplate transaction;
+    private final long retentionHours;
+
+    public SyncLogCompactor(SyncLogRepository syncLogRepository,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${sync.compaction.retention-hours:168}") long retentionHours) {
+        this.syncLogRepository = syncLogRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.retentionHours = retentionHours;
+    }
+
+    @Scheduled(initialDelayString = "${sync.compaction.initial-delay-ms:60000}",
+               fixedDelayString = "${sync.compaction.interval-ms:3600000}")
+    public void compact() {
+        // 在事务边界之外捕获异常：删除失败时事务已回滚，不会再以 UnexpectedRollbackException 结束
+        try {
+            transaction.executeWithoutResult(status ->
+                syncLogRepository.deleteSupersededBefore(LocalDateTime.now().minusHours(retentionHours)));
+        } catch (Exception e) {
+            System.err.println("压缩同步日志失败: " + e.getMessage());
+        }
+    }
+}
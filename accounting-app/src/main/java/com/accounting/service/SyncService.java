@@ -8,14 +8,24 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -29,13 +39,24 @@ import java.util.Map;
  * </p>
  */
 public class SyncService {
+    // findAllById 每次查询的 ID 数量，避免超过 SQLite 的参数个数上限
+    private static final int LOOKUP_CHUNK = 500;
+
     private final TransactionRepository transactionRepository;
     private final SyncLogRepository syncLogRepository;
+    private final SyncVersionAllocator versionAllocator;
+    private final MonthlyRollupService rollupService;
+    private final TransactionTemplate mergeTransaction;
     private final Gson gson;
 
-    public SyncService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository) {
+    public SyncService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository,
+                       SyncVersionAllocator versionAllocator, MonthlyRollupService rollupService,
+                       PlatformTransactionManager transactionManager) {
         this.transactionRepository = transactionRepository;
         this.syncLogRepository = syncLogRepository;
+        this.versionAllocator = versionAllocator;
+        this.rollupService = rollupService;
+        this.mergeTransaction = new TransactionTemplate(transactionManager);
 
         JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
         JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
@@ -54,15 +75,74 @@ public class SyncService {
      * @return 包含变更列表(changes)和当前最大版本号(current_version)的 Map
      */
     public Map<String, Object> pull(String userId, Long lastVersion) {
-        List<SyncLog> changes = syncLogRepository.findChanges(userId, lastVersion);
-        Long maxVersion = syncLogRepository.getMaxVersion(userId);
+        return pull(userId, lastVersion, null, false);
+    }
+
+    /**
+     * 分页拉取增量更新
+     * <p>
+     * 每页最多返回 limit 条变更，has_more 为 true 时客户端应以 current_version 作为下一次的 lastVersion 继续拉取。
+     * latestOnly 为 true 时，同一页内同一实体只返回版本最高的一条变更（其余变更已被它覆盖）。
+     * 只返回不超过版本号低水位的变更：更高的版本号可能仍有事务未提交，current_version 不会越过它们。
+     * </p>
+     * @param limit 每页条数，为 null 时不分页
+     * @return 包含 changes、current_version（本次结果覆盖到的版本号）与 has_more 的 Map
+     */
+    public Map<String, Object> pull(String userId, Long lastVersion, Integer limit, boolean latestOnly) {
+        List<SyncLog> changes;
+        boolean hasMore = false;
+        Long currentVersion = versionAllocator.committed(userId);
+        if (limit == null) {
+            changes = syncLogRepository.findChanges(userId, lastVersion, currentVersion);
+        } else {
+            changes = syncLogRepository.findChanges(userId, lastVersion, currentVersion, PageRequest.of(0, limit + 1));
+            hasMore = changes.size() > limit;
+            if (hasMore) {
+                changes = changes.subList(0, limit);
+                currentVersion = changes.get(changes.size() - 1).getVersion();
+            }
+        }
+        if (latestOnly) {
+            changes = latestPerEntity(changes);
+        }
         
         Map<String, Object> result = new HashMap<>();
         result.put("changes", changes);
-        result.put("current_version", maxVersion);
+        result.put("current_version", currentVersion);
+        result.put("has_more", hasMore);
         return result;
     }
 
+    // 按版本升序保留每个实体的最后一条变更
+    private static List<SyncLog> latestPerEntity(List<SyncLog> changes) {
+        Map<String, SyncLog> latest = new LinkedHashMap<>();
+        for (SyncLog log : changes) {
+            latest.remove(log.getEntityId());
+            latest.put(log.getEntityId(), log);
+        }
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * 快照引导 (Snapshot Bootstrap)
+     * <p>
+     * 新设备无需从版本 0 重放全部日志：先取得版本号低水位交给 onVersion，
+     * 再在同一只读事务中流式读出该用户可见的全部交易（含 userId 为 null 的历史公共记录）交给 sink。
+     * 快照包含版本号之前的所有变更，也可能已包含之后的部分变更；
+     * 客户端随后从该版本号增量拉取，重放这些变更是幂等的。
+     * </p>
+     * @return 快照对应的版本号
+     */
+    @Transactional(readOnly = true)
+    public long snapshot(String userId, LongConsumer onVersion, Consumer<? super Transaction> sink) {
+        long version = versionAllocator.committed(userId);
+        onVersion.accept(version);
+        try (Stream<Transaction> rows = transactionRepository.streamAll(TransactionService.visibleForUser(userId))) {
+            rows.forEach(sink);
+        }
+        return version;
+    }
+
     /**
      * 推送并合并更改 (Push & Merge)
      * <p>
@@ -70,36 +150,49 @@ public class SyncService {
      * 采用 Last Write Wins (LWW) 策略解决冲突：
      * 如果服务器已存在该记录，则比较更新时间 (updatedAt)。
      * 仅当客户端数据的更新时间晚于服务器数据时，才执行覆盖操作。
+     * 整批先在一个事务中合并；写入失败时整批回滚，改为逐条在独立事务中合并，
+     * 失败的记录列入 failed_ids（不写入、不产生同步日志），其余记录照常合并并列入 success_ids。
      * </p>
      * @param userId 当前用户ID
      * @param incomingTransactions 客户端上传的交易列表
      * @return 同步结果，包含成功ID列表、失败ID列表及新版本号
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Map<String, Object> push(String userId, List<Transaction> incomingTransactions) {
+        // 同一批次中重复的 ID 只保留 updatedAt 最新的一条，与逐条 LWW 合并的结果一致
+        Map<String, Transaction> batch = new LinkedHashMap<>();
+        List<String> clientIds = new ArrayList<>();
+        
+        for (Transaction incoming : incomingTransactions) {
+            String clientId = incoming.getId();
+            // 如果客户端上传的数据没有ID（新创建），则由服务器生成UUID
+            if (clientId == null || clientId.isEmpty()) {
+                incoming.setId(java.util.UUID.randomUUID().toString());
+                // 无法映射空ID键，客户端应始终提供临时ID；此处仅记录生成的ID
+            }
+            incoming.setUserId(userId);
+            if (incoming.getUpdatedAt() == null) {
+                incoming.setUpdatedAt(LocalDateTime.now());
+            }
+            batch.merge(incoming.getId(), incoming, (kept, next) -> isNewer(next, kept) ? next : kept);
+            clientIds.add(clientId);
+        }
+        
+        Set<String> failed = mergeIsolated(userId, new ArrayList<>(batch.values()));
+        
         List<String> successIds = new ArrayList<>();
         List<String> failedIds = new ArrayList<>();
         Map<String, String> idMapping = new HashMap<>();
-        
-        Long currentMaxVersion = syncLogRepository.getMaxVersion(userId);
-        
-        for (Transaction incoming : incomingTransactions) {
-            try {
-                String clientId = incoming.getId();
-                // 如果客户端上传的数据没有ID（新创建），则由服务器生成UUID
-                if (clientId == null || clientId.isEmpty()) {
-                    String newId = java.util.UUID.randomUUID().toString();
-                    incoming.setId(newId);
-                    // 无法映射空ID键，客户端应始终提供临时ID；此处仅记录生成的ID
-                }
-                processIncomingTransaction(userId, incoming, currentMaxVersion);
-                successIds.add(incoming.getId());
-                if (clientId != null && !clientId.isEmpty()) {
-                    idMapping.put(clientId, incoming.getId());
-                }
-                currentMaxVersion++; // Increment for next item in batch
-            } catch (Exception e) {
-                failedIds.add(incoming.getId());
-                e.printStackTrace();
+        for (int i = 0; i < incomingTransactions.size(); i++) {
+            String id = incomingTransactions.get(i).getId();
+            String clientId = clientIds.get(i);
+            if (failed.contains(id)) {
+                failedIds.add(id);
+                continue;
+            }
+            successIds.add(id);
+            if (clientId != null && !clientId.isEmpty()) {
+                idMapping.put(clientId, id);
             }
         }
         
@@ -107,47 +200,100 @@ public class SyncService {
         result.put("success_ids", successIds);
         result.put("failed_ids", failedIds);
         result.put("id_mapping", idMapping);
-        result.put("new_version", currentMaxVersion);
+        result.put("new_version", versionAllocator.committed(userId));
         return result;
     }
 
-    private void processIncomingTransaction(String userId, Transaction incoming, Long currentVersion) {
-        incoming.setUserId(userId);
-        if (incoming.getUpdatedAt() == null) {
-            incoming.setUpdatedAt(LocalDateTime.now());
+    /**
+     * 整批合并失败时逐条重试，一条记录出错不影响同批其他记录
+     * @return 合并失败的记录 ID
+     */
+    private Set<String> mergeIsolated(String userId, List<Transaction> batch) {
+        Set<String> failed = new HashSet<>();
+        try {
+            mergeTransaction.executeWithoutResult(status -> mergeBatch(userId, batch));
+            return failed;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                System.err.println("同步记录合并失败: " + batch.get(0).getId() + ", " + e.getMessage());
+                failed.add(batch.get(0).getId());
+                return failed;
+            }
+            System.err.println("同步批次合并失败，改为逐条合并: " + e.getMessage());
         }
-        Transaction existing = transactionRepository.findById(incoming.getId()).orElse(null);
-        if (existing == null) {
-            saveAndLog(incoming, SyncLog.Action.ADD, currentVersion + 1);
-        } else {
-            int affected = transactionRepository.updateIfNewer(
-                    incoming.getId(),
-                    incoming.getUserId(),
-                    incoming.getType(),
-                    incoming.getAmount(),
-                    incoming.getCategoryId(),
-                    incoming.getDescription(),
-                    incoming.getDate(),
-                    incoming.getUpdatedAt(),
-                    incoming.getTags()
-            );
-            if (affected > 0) {
-                saveAndLog(incoming, SyncLog.Action.UPDATE, currentVersion + 1);
+        for (Transaction t : batch) {
+            try {
+                mergeTransaction.executeWithoutResult(status -> mergeBatch(userId, List.of(t)));
+            } catch (RuntimeException e) {
+                System.err.println("同步记录合并失败: " + t.getId() + ", " + e.getMessage());
+                failed.add(t.getId());
             }
         }
+        return failed;
     }
 
-    private void saveAndLog(Transaction transaction, SyncLog.Action action, Long version) {
-        Transaction saved = transactionRepository.save(transaction);
+    /**
+     * 批量合并：一次查出已存在的记录，拆分为插入与 LWW 更新两组分别批量写入，
+     * 再批量写入对应的同步日志
+     */
+    private void mergeBatch(String userId, List<Transaction> batch) {
+        Map<String, Transaction> existing = new HashMap<>();
+        for (int start = 0; start < batch.size(); start += LOOKUP_CHUNK) {
+            List<String> ids = new ArrayList<>();
+            for (Transaction t : batch.subList(start, Math.min(start + LOOKUP_CHUNK, batch.size()))) {
+                ids.add(t.getId());
+            }
+            for (Transaction t : transactionRepository.findAllById(ids)) {
+                existing.put(t.getId(), t);
+            }
+        }
         
-        SyncLog log = new SyncLog(
-            saved.getId(),
-            saved.getUserId(),
+        List<Transaction> inserts = new ArrayList<>();
+        List<Transaction> updates = new ArrayList<>();
+        for (Transaction incoming : batch) {
+            Transaction current = existing.get(incoming.getId());
+            if (current == null) {
+                inserts.add(incoming);
+            } else if (current.getUpdatedAt() == null || incoming.getUpdatedAt().isAfter(current.getUpdatedAt())) {
+                // 库中的 createdAt 不会被覆盖，日志内容与之保持一致
+                incoming.setCreatedAt(current.getCreatedAt());
+                updates.add(incoming);
+            }
+        }
+        
+        List<SyncLog> logs = new ArrayList<>(inserts.size() + updates.size());
+        transactionRepository.insertAll(inserts);
+        for (Transaction t : inserts) {
+            logs.add(newLog(t, SyncLog.Action.ADD));
+        }
+        // 条件更新在数据库中再次比较 updatedAt，并发写入时仍然只有较新的数据生效
+        int[] affected = transactionRepository.updateAllIfNewer(updates);
+        List<Transaction> replaced = new ArrayList<>();
+        List<Transaction> applied = new ArrayList<>(inserts);
+        for (int i = 0; i < updates.size(); i++) {
+            if (affected[i] > 0) {
+                replaced.add(existing.get(updates.get(i).getId()));
+                applied.add(updates.get(i));
+                logs.add(newLog(updates.get(i), SyncLog.Action.UPDATE));
+            }
+        }
+        // existing 中的实体读出后未被修改，仍是更新前的值
+        rollupService.apply(replaced, applied);
+        syncLogRepository.saveAll(logs);
+    }
+
+    private static boolean isNewer(Transaction candidate, Transaction current) {
+        return candidate.getUpdatedAt().isAfter(current.getUpdatedAt());
+    }
+
+    private SyncLog newLog(Transaction transaction, SyncLog.Action action) {
+        return new SyncLog(
+            transaction.getId(),
+            transaction.getUserId(),
             action,
             "Transaction",
-            gson.toJson(saved),
-            version
+            gson.toJson(transaction),
+            versionAllocator.next(transaction.getUserId())
         );
-        syncLogRepository.save(log);
     }
 }
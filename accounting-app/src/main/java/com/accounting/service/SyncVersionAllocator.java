@@ -0,0 +1,101 @@
+package com.accounting.service;
+
+import com.accounting.repository.SyncLogRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 同步版本号分配器
+ * 每个用户一个内存计数器，首次使用时从 sync_log_v2 的最大版本号初始化，之后分配为 O(1)。
+ * 并发写入同一用户时也不会分到相同的版本号；数据库上的 (userId, version) 唯一索引兜底。
+ * 版本号在事务提交前分配，提交顺序可能与分配顺序不同：已分配但事务未结束的版本号记为在途，
+ * 低水位 = 最小在途版本号 - 1，低于等于它的版本号都已提交或已回滚，不会再出现新日志。
+ * 拉取与缓存只使用低水位，客户端不会因为乱序提交而永久漏掉某个版本。
+ * 事务回滚会留下未使用的版本号，客户端按 version > lastVersion 拉取，空洞不影响同步。
+ */
+@Service
+public class SyncVersionAllocator {
+    private final SyncLogRepository syncLogRepository;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public SyncVersionAllocator(SyncLogRepository syncLogRepository) {
+        this.syncLogRepository = syncLogRepository;
+    }
+
+    /**
+     * 分配下一个版本号
+     * 在事务中调用时，版本号在事务结束（提交或回滚）前保持在途
+     */
+    public long next(String userId) {
+        Counter counter = counter(userId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return counter.allocate(false);
+        }
+        long version = counter.allocate(true);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                counter.release(version);
+            }
+        });
+        return version;
+    }
+
+    /**
+     * 已提交的版本号低水位
+     * 不超过任何在途版本号，版本号变化时该用户的数据一定已经可见
+     */
+    public long committed(String userId) {
+        return counter(userId).watermark();
+    }
+
+    /**
+     * 已分配的最大版本号
+     */
+    public long current(String userId) {
+        return counter(userId).allocated();
+    }
+
+    private Counter counter(String userId) {
+        return counters.computeIfAbsent(userId, this::seed);
+    }
+
+    private Counter seed(String userId) {
+        Long max = syncLogRepository.getMaxVersion(userId);
+        return new Counter(max != null ? max : 0);
+    }
+
+    private static final class Counter {
+        private long allocated;
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+
+        Counter(long allocated) {
+            this.allocated = allocated;
+        }
+
+        synchronized long allocate(boolean pending) {
+            long version = ++allocated;
+            if (pending) {
+                inFlight.add(version);
+            }
+            return version;
+        }
+
+        synchronized void release(long version) {
+            inFlight.remove(version);
+        }
+
+        synchronized long allocated() {
+            return allocated;
+        }
+
+        synchronized long watermark() {
+            return inFlight.isEmpty() ? allocated : inFlight.first() - 1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.accounting.service;
+
+import com.accounting.model.Transaction;
+import java.util.List;
+
+/**
+ * 交易分页结果
+ */
+public class TransactionPage {
+    private final List<Transaction> items;
+    private final String nextCursor;
+
+    public TransactionPage(List<Transaction> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Transaction> getItems() {
+        return items;
+    }
+
+    /**
+     * 下一页游标，没有更多数据时为 null
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
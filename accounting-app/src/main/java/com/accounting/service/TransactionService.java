@@ -1,28 +1,45 @@
 package com.accounting.service;
 
 import com.accounting.filter.FilterRule;
+import com.accounting.filter.FilterRuleCompiler;
 import com.accounting.model.SyncLog;
 import com.accounting.model.Transaction;
 import com.accounting.repository.SyncLogRepository;
+import com.accounting.repository.TransactionCursor;
 import com.accounting.repository.TransactionRepository;
+import com.accounting.util.CsvImportResult;
+import com.accounting.util.TransactionCsvImporter;
+import com.accounting.util.TransactionCsvWriter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 交易服务类
@@ -31,13 +48,33 @@ import java.util.stream.Collectors;
 @Service
 @Transactional
 public class TransactionService {
+    // findAllById 每次查询的 ID 数量，避免超过 SQLite 的参数个数上限
+    private static final int LOOKUP_CHUNK = 500;
+    // 导入批次遇到写锁冲突时的最大尝试次数
+    private static final int IMPORT_ATTEMPTS = 3;
+
     private final TransactionRepository transactionRepository;
     private final SyncLogRepository syncLogRepository;
+    private final SyncVersionAllocator versionAllocator;
+    private final MonthlyRollupService rollupService;
+    private final TransactionTemplate batchTransaction;
+    private final int importBatchSize;
+    private final int importWorkers;
     private final Gson gson;
     
-    public TransactionService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository) {
+    public TransactionService(TransactionRepository transactionRepository, SyncLogRepository syncLogRepository,
+                              SyncVersionAllocator versionAllocator, MonthlyRollupService rollupService,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${transactions.import.batch-size:1000}") int importBatchSize,
+                              @Value("${transactions.import.workers:0}") int importWorkers) {
         this.transactionRepository = transactionRepository;
         this.syncLogRepository = syncLogRepository;
+        this.versionAllocator = versionAllocator;
+        this.rollupService = rollupService;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.importBatchSize = importBatchSize;
+        // 0 表示按 CPU 核数
+        this.importWorkers = importWorkers > 0 ? importWorkers : Runtime.getRuntime().availableProcessors();
         
         JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
         JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
@@ -55,6 +92,7 @@ public class TransactionService {
         transaction.setUpdatedAt(LocalDateTime.now());
         
         Transaction saved = transactionRepository.save(transaction);
+        rollupService.added(saved);
         
         // 记录同步日志
         recordSyncLog(saved, SyncLog.Action.ADD);
@@ -70,6 +108,7 @@ public class TransactionService {
             Transaction t = transactionRepository.findById(transactionId).orElse(null);
             if (t != null) {
                 transactionRepository.deleteById(transactionId);
+                rollupService.removed(t);
                 recordSyncLog(t, SyncLog.Action.DELETE);
                 return true;
             }
@@ -95,7 +134,10 @@ public class TransactionService {
                 updatedTransaction.setUpdatedAt(LocalDateTime.now());
             }
             
+            // save 会把新值合并进受管理的 existing，先记下旧值用于扣减汇总
+            Transaction before = rollupKeyOf(existing);
             Transaction saved = transactionRepository.save(updatedTransaction);
+            rollupService.replaced(before, saved);
             recordSyncLog(saved, SyncLog.Action.UPDATE);
             return saved;
         }).orElse(null);
@@ -138,6 +180,7 @@ public class TransactionService {
                 t.setCreatedAt(t.getCreatedAt() != null ? t.getCreatedAt() : LocalDateTime.now());
                 t.setUpdatedAt(t.getUpdatedAt() != null ? t.getUpdatedAt() : LocalDateTime.now());
                 Transaction saved = transactionRepository.save(t);
+                rollupService.added(saved);
                 recordSyncLog(saved, SyncLog.Action.ADD);
                 idMapping.put(originalId, saved.getId());
             }
@@ -145,22 +188,31 @@ public class TransactionService {
         return idMapping;
     }
     
+    // 只复制汇总键与金额
+    private static Transaction rollupKeyOf(Transaction t) {
+        Transaction copy = new Transaction(t.getUserId(), t.getType(), t.getAmount(), t.getCategoryId(), t.getDescription());
+        copy.setId(t.getId());
+        copy.setDate(t.getDate());
+        return copy;
+    }
+    
     /**
      * 记录同步日志
      */
     private void recordSyncLog(Transaction transaction, SyncLog.Action action) {
         if (transaction.getUserId() == null) return;
-        
-        Long currentMaxVersion = syncLogRepository.getMaxVersion(transaction.getUserId());
-        SyncLog log = new SyncLog(
+        syncLogRepository.save(newSyncLog(transaction, action));
+    }
+    
+    private SyncLog newSyncLog(Transaction transaction, SyncLog.Action action) {
+        return new SyncLog(
             transaction.getId(),
             transaction.getUserId(),
             action,
             "Transaction",
             action == SyncLog.Action.DELETE ? null : gson.toJson(transaction),
-            currentMaxVersion + 1
+            versionAllocator.next(transaction.getUserId())
         );
-        syncLogRepository.save(log);
     }
     
     /**
@@ -185,17 +237,92 @@ public class TransactionService {
         return transactionRepository.findVisibleForUser(userId);
     }
     
+    /**
+     * 查询用户可见且满足过滤规则的交易
+     * 可编译的条件下推到数据库执行，无法编译的条件在内存中过滤
+     */
+    public List<Transaction> findVisibleForUser(String userId, FilterRule rule) {
+        return findMatching(visibleForUser(userId), rule);
+    }
+    
+    /**
+     * 按 (date, id) 键集分页查询用户可见且满足过滤规则的交易
+     * @param after 上一页游标，为 null 表示第一页
+     */
+    @Transactional(readOnly = true)
+    public TransactionPage findPageVisibleForUser(String userId, FilterRule rule, TransactionCursor after, int limit) {
+        return findPage(visibleForUser(userId), rule, after, limit);
+    }
+    
+    /**
+     * 流式读取用户可见且满足过滤规则的交易，逐条交给 sink 处理，不在内存中汇总
+     */
+    @Transactional(readOnly = true)
+    public void streamVisibleForUser(String userId, FilterRule rule, Consumer<? super Transaction> sink) {
+        stream(visibleForUser(userId), rule, sink);
+    }
+    
+    /**
+     * 按 (date, id) 键集分页查询该用户可见的交易，与 getTransactionsByUserId 的范围一致
+     */
+    @Transactional(readOnly = true)
+    public TransactionPage findPageByUserId(String userId, TransactionCursor after, int limit) {
+        return findPage(visibleForUser(userId), null, after, limit);
+    }
+    
+    /**
+     * 流式读取该用户可见的交易
+     */
+    @Transactional(readOnly = true)
+    public void streamByUserId(String userId, Consumer<? super Transaction> sink) {
+        stream(visibleForUser(userId), null, sink);
+    }
+    
     /**
      * 使用过滤规则查询交易
      */
     public List<Transaction> filterTransactions(FilterRule rule) {
-        List<Transaction> all = getAllTransactions();
         if (rule == null) {
-            return all;
+            return getAllTransactions();
+        }
+        return findMatching(null, rule);
+    }
+    
+    private List<Transaction> findMatching(Specification<Transaction> scope, FilterRule rule) {
+        FilterRuleCompiler.Plan plan = FilterRuleCompiler.plan(rule);
+        return plan.applyResidual(transactionRepository.findAll(scoped(scope, plan)));
+    }
+    
+    private TransactionPage findPage(Specification<Transaction> scope, FilterRule rule,
+                                     TransactionCursor after, int limit) {
+        FilterRuleCompiler.Plan plan = FilterRuleCompiler.plan(rule);
+        List<Transaction> rows = transactionRepository.findPage(scoped(scope, plan), after, limit + 1);
+        boolean hasMore = rows.size() > limit;
+        if (hasMore) {
+            rows = rows.subList(0, limit);
         }
-        return all.stream()
-            .filter(rule::test)
-            .collect(Collectors.toList());
+        // 游标取自数据库返回的最后一行，内存中过滤掉的行不影响翻页位置
+        String nextCursor = hasMore ? TransactionCursor.after(rows.get(rows.size() - 1)).encode() : null;
+        return new TransactionPage(plan.applyResidual(rows), nextCursor);
+    }
+    
+    private void stream(Specification<Transaction> scope, FilterRule rule, Consumer<? super Transaction> sink) {
+        FilterRuleCompiler.Plan plan = FilterRuleCompiler.plan(rule);
+        try (Stream<Transaction> rows = transactionRepository.streamAll(scoped(scope, plan))) {
+            rows.filter(plan::matchesResidual).forEach(sink);
+        }
+    }
+    
+    private static Specification<Transaction> scoped(Specification<Transaction> scope, FilterRuleCompiler.Plan plan) {
+        return Specification.where(scope).and(plan.getSpecification());
+    }
+    
+    // 与 findVisibleForUser 查询一致：包含 userId 为 null 的历史公共记录；
+    // 同步的全量、分页、流式与快照接口都用它，返回的记录集合相同
+    static Specification<Transaction> visibleForUser(String userId) {
+        return (root, query, cb) -> userId == null
+            ? cb.isNull(root.get("userId"))
+            : cb.or(cb.isNull(root.get("userId")), cb.equal(root.get("userId"), userId));
     }
     
     /**
@@ -221,6 +348,16 @@ public class TransactionService {
         return transactionRepository.findByDateRange(startDate, endDate);
     }
     
+    /**
+     * 用户在时间范围内（含两端）的支出合计，分类为空表示全部分类
+     */
+    public double sumExpenses(String userId, String categoryId, LocalDateTime startDate, LocalDateTime endDate) {
+        Transaction.TransactionType expense = Transaction.TransactionType.EXPENSE;
+        return categoryId == null
+            ? transactionRepository.sumAmount(userId, expense, startDate, endDate)
+            : transactionRepository.sumAmountByCategory(userId, categoryId, expense, startDate, endDate);
+    }
+    
     /**
      * 按分类查询
      */
@@ -256,21 +393,11 @@ public class TransactionService {
      * 导出为CSV
      */
     public void exportToCSV(String filePath, List<Transaction> transactions) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            // 写入表头
-            writer.append("ID,用户ID,类型,金额,分类ID,描述,日期,标签\n");
-            
-            // 写入数据
+        try (Writer writer = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            TransactionCsvWriter csv = new TransactionCsvWriter(writer);
+            csv.writeHeader();
             for (Transaction t : transactions) {
-                writer.append(t.getId()).append(",")
-                      .append(t.getUserId() != null ? t.getUserId() : "").append(",")
-                      .append(t.getType() != null ? t.getType().name() : "").append(",")
-                      .append(String.valueOf(t.getAmount())).append(",")
-                      .append(t.getCategoryId() != null ? t.getCategoryId() : "").append(",")
-                      .append(t.getDescription() != null ? t.getDescription().replace(",", "，") : "").append(",")
-                      .append(t.getDate() != null ? t.getDate().toString() : "").append(",")
-                      .append(t.getTags() != null ? t.getTags().replace(",", "，") : "")
-                      .append("\n");
+                csv.write(t);
             }
         }
     }
@@ -278,39 +405,107 @@ public class TransactionService {
     /**
      * 从CSV导入
      */
-    public List<Transaction> importFromCSV(String filePath) throws IOException {
-        List<Transaction> imported = new ArrayList<>();
-        Path path = Paths.get(filePath);
-        
-        try (Reader reader = Files.newBufferedReader(path)) {
-            List<String> lines = Files.readAllLines(path);
-            
-            // 跳过表头
-            for (int i = 1; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
-                if (parts.length >= 7) {
-                    Transaction t = new Transaction();
-                    t.setId(parts[0]);
-                    t.setUserId(parts[1]);
-                    t.setType(Transaction.TransactionType.valueOf(parts[2]));
-                    t.setAmount(Double.parseDouble(parts[3]));
-                    t.setCategoryId(parts[4]);
-                    t.setDescription(parts[5]);
-                    t.setDate(LocalDateTime.parse(parts[6]));
-                    if (parts.length > 7) {
-                        t.setTags(parts[7]);
-                    }
-                    imported.add(t);
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CsvImportResult importFromCSV(String filePath) throws IOException {
+        try (Reader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            return importFromCSV(reader, null, processed -> { });
+        }
+    }
+    
+    /**
+     * 流式导入CSV
+     * 每批记录在独立事务中提交，并写入一批同步日志；校验失败的行跳过并记录在结果中
+     * @param userId 不为 null 时所有记录归属该用户，忽略文件中的用户列
+     * @param progress 每批提交后回调已处理的行数
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CsvImportResult importFromCSV(Reader reader, String userId, LongConsumer progress) throws IOException {
+        TransactionCsvImporter importer = new TransactionCsvImporter(importBatchSize, importWorkers);
+        return importer.run(reader, batch -> {
+            if (userId != null) {
+                batch.forEach(t -> t.setUserId(userId));
+            }
+            commitImportBatch(batch, userId);
+        }, progress);
+    }
+    
+    /**
+     * 在独立事务中提交一批导入记录
+     * SQLite 中两个事务同时由读锁升级为写锁时，其中一个会立即得到 SQLITE_BUSY（不等待 busy_timeout），
+     * 此时整批已回滚，稍后重试即可
+     */
+    private void commitImportBatch(List<Transaction> batch, String userId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                batchTransaction.executeWithoutResult(status -> importBatch(batch, userId));
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= IMPORT_ATTEMPTS) throw e;
+                System.err.println("导入批次遇到数据库锁冲突，重试: " + e.getMessage());
+                try {
+                    Thread.sleep(200L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
                 }
             }
         }
+    }
+    
+    /**
+     * 写入一批导入的交易：新 ID 批量插入，已存在的 ID 覆盖原记录
+     * 限定用户导入时，属于其他用户的 ID 改用新 ID 插入，不覆盖他人数据
+     */
+    private void importBatch(List<Transaction> batch, String userId) {
+        LocalDateTime now = LocalDateTime.now();
+        // 同一批内重复的 ID 以后出现的为准
+        Map<String, Transaction> byId = new LinkedHashMap<>();
+        for (Transaction t : batch) {
+            t.setCreatedAt(now);
+            t.setUpdatedAt(now);
+            byId.put(t.getId(), t);
+        }
+        List<String> ids = new ArrayList<>(byId.keySet());
+        Map<String, Transaction> existing = new HashMap<>();
+        for (int start = 0; start < ids.size(); start += LOOKUP_CHUNK) {
+            for (Transaction t : transactionRepository.findAllById(ids.subList(start, Math.min(start + LOOKUP_CHUNK, ids.size())))) {
+                existing.put(t.getId(), t);
+            }
+        }
         
-        // 添加到现有交易列表
-        for (Transaction t : imported) {
-            addTransaction(t);
+        List<Transaction> inserts = new ArrayList<>();
+        List<Transaction> updates = new ArrayList<>();
+        for (Transaction t : byId.values()) {
+            Transaction current = existing.get(t.getId());
+            if (current != null && userId != null && !userId.equals(current.getUserId())) {
+                t.setId(UUID.randomUUID().toString());
+                inserts.add(t);
+            } else if (current == null) {
+                inserts.add(t);
+            } else {
+                t.setCreatedAt(current.getCreatedAt());
+                updates.add(t);
+            }
         }
         
-        return imported;
+        List<SyncLog> logs = new ArrayList<>(byId.size());
+        transactionRepository.insertAll(inserts);
+        for (Transaction t : inserts) {
+            if (t.getUserId() != null) logs.add(newSyncLog(t, SyncLog.Action.ADD));
+        }
+        int[] affected = transactionRepository.updateAllIfNewer(updates);
+        List<Transaction> replaced = new ArrayList<>();
+        List<Transaction> applied = new ArrayList<>(inserts);
+        for (int i = 0; i < updates.size(); i++) {
+            if (affected[i] > 0) {
+                Transaction t = updates.get(i);
+                replaced.add(existing.get(t.getId()));
+                applied.add(t);
+                if (t.getUserId() != null) logs.add(newSyncLog(t, SyncLog.Action.UPDATE));
+            }
+        }
+        rollupService.apply(replaced, applied);
+        syncLogRepository.saveAll(logs);
     }
     
     /**
@@ -328,11 +523,20 @@ public class TransactionService {
     public void clearAllTransactions() {
         List<Transaction> all = transactionRepository.findAll();
         transactionRepository.deleteAll();
+        rollupService.clear();
         for(Transaction t : all) {
             recordSyncLog(t, SyncLog.Action.DELETE);
         }
     }
     
+    /**
+     * 获取用户的交易数量
+     */
+    @Transactional(readOnly = true)
+    public long countTransactionsByUserId(String userId) {
+        return transactionRepository.countByUserId(userId);
+    }
+    
     /**
      * 获取交易数量
      */
@@ -0,0 +1,31 @@
+package com.accounting.service;
+
+import com.accounting.model.Transaction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 交易变更事件
+ * 在写入方的事务中发布，携带被删除（或修改前）与新增（或修改后）的交易；
+ * 监听方用 @TransactionalEventListener 在事务提交后处理，回滚的写入不会触发
+ */
+public class TransactionsChangedEvent {
+    private final List<Transaction> removed;
+    private final List<Transaction> added;
+
+    public TransactionsChangedEvent(Collection<Transaction> removed, Collection<Transaction> added) {
+        this.removed = Collections.unmodifiableList(new ArrayList<>(removed));
+        this.added = Collections.unmodifiableList(new ArrayList<>(added));
+    }
+
+    public List<Transaction> getRemoved() {
+        return removed;
+    }
+
+    public List<Transaction> getAdded() {
+        return added;
+    }
+}
@@ -2,11 +2,17 @@ package com.accounting.service.local;
 
 import com.accounting.model.Budget;
 import com.accounting.model.Transaction;
+import com.accounting.storage.BudgetCodec;
 import com.accounting.storage.StorageManager;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
 import com.google.gson.reflect.TypeToken;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,6 +24,7 @@ import java.util.stream.Collectors;
  */
 public class LocalBudgetService {
     private static final String BUDGETS_FILE = "budgets.json";
+    private static final BudgetCodec CODEC = new BudgetCodec();
     private final StorageManager storageManager;
     private final LocalTransactionService transactionService;
     private final Gson gson;
@@ -26,32 +33,38 @@ public class LocalBudgetService {
     public LocalBudgetService(StorageManager storageManager, LocalTransactionService transactionService) {
         this.storageManager = storageManager;
         this.transactionService = transactionService;
-        this.gson = new Gson();
+        JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new JsonPrimitive(src.toString());
+        JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
+        JsonSerializer<LocalDate> lds = (src, typeOfSrc, context) -> new JsonPrimitive(src.toString());
+        JsonDeserializer<LocalDate> ldd = (json, typeOfT, context) -> LocalDate.parse(json.getAsString());
+        this.gson = new GsonBuilder()
+                .registerTypeAdapter(LocalDateTime.class, lts).registerTypeAdapter(LocalDateTime.class, ltd)
+                .registerTypeAdapter(LocalDate.class, lds).registerTypeAdapter(LocalDate.class, ldd)
+                .create();
         this.budgets = new ArrayList<>();
         loadBudgets();
     }
 
     private void loadBudgets() {
         try {
-            String json = storageManager.readFile(BUDGETS_FILE);
-            if (json != null && !json.trim().isEmpty()) {
-                budgets = gson.fromJson(json, new TypeToken<List<Budget>>(){}.getType());
-                if (budgets == null) budgets = new ArrayList<>();
-            }
+            budgets = storageManager.readRecords(BUDGETS_FILE, CODEC, gson, new TypeToken<List<Budget>>(){}.getType());
         } catch (Exception e) {
             budgets = new ArrayList<>();
         }
     }
 
+    /**
+     * 标记预算文件待写，由存储管理器的后台线程合并写出
+     */
     private void saveBudgets() {
-        try {
-            storageManager.writeFile(BUDGETS_FILE, gson.toJson(budgets));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        storageManager.markDirty(BUDGETS_FILE, this::encodeBudgets);
     }
 
-    public Budget setMonthlyBudget(String userId, String categoryId, double amount, int year, int month) {
+    private synchronized byte[] encodeBudgets() {
+        return storageManager.encodeRecords(budgets, CODEC, gson);
+    }
+
+    public synchronized Budget setMonthlyBudget(String userId, String categoryId, double amount, int year, int month) {
         Budget existing = budgets.stream()
                 .filter(b -> (userId == null || userId.equals(b.getUserId())) &&
                         (categoryId == null ? b.getCategoryId() == null : categoryId.equals(b.getCategoryId())) &&
@@ -76,14 +89,13 @@ public class LocalBudgetService {
         YearMonth ym = YearMonth.of(year, month);
         LocalDate start = ym.atDay(1);
         LocalDate end = ym.atEndOfMonth();
-        List<Transaction> txs = transactionService.getTransactionsByDateRange(start.atStartOfDay(), end.atTime(23, 59, 59));
-        
-        return txs.stream()
-                .filter(t -> (userId == null || userId.isEmpty() || userId.equals(t.getUserId())))
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .filter(t -> categoryId == null || categoryId.equals(t.getCategoryId()))
-                .mapToDouble(Transaction::getAmount)
-                .sum();
+        double[] used = new double[1];
+        transactionService.scanSummaries(userId, start, end, (day, type, category, amount) -> {
+            if (type == Transaction.TransactionType.EXPENSE && (categoryId == null || categoryId.equals(category))) {
+                used[0] += amount;
+            }
+        });
+        return used[0];
     }
 
     public boolean isOverBudget(String userId, String categoryId, int year, int month) {
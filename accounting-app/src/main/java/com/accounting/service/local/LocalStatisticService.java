@@ -6,6 +6,7 @@ import java.time.YearMonth;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -13,174 +14,71 @@ import java.util.stream.Collectors;
  */
 public class LocalStatisticService {
     private LocalTransactionService transactionService;
+    private TransactionCube cachedCube;
+    private String cachedUserId;
+    private long cachedVersion;
     
     public LocalStatisticService(LocalTransactionService transactionService) {
         this.transactionService = transactionService;
     }
     
-    public Map<YearMonth, Double> getMonthlyExpenses(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
+    /**
+     * 获取用户的聚合立方体，数据版本未变化时复用上次结果
+     */
+    public synchronized TransactionCube getCube(String userId) {
+        long version = transactionService.getVersion();
+        if (cachedCube != null && cachedVersion == version && Objects.equals(cachedUserId, userId)) {
+            return cachedCube;
         }
-        
-        return monthlyData;
+        cachedCube = TransactionCube.build(transactionService, userId);
+        cachedUserId = userId;
+        cachedVersion = version;
+        return cachedCube;
+    }
+    
+    public Map<YearMonth, Double> getMonthlyExpenses(String userId, int months) {
+        return monthlyTotals(userId, months, Transaction.TransactionType.EXPENSE);
     }
     
     public Map<YearMonth, Double> getMonthlyIncome(String userId, int months) {
-        Map<YearMonth, Double> monthlyData = new HashMap<>();
-        YearMonth currentMonth = YearMonth.now();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < months; i++) {
-            YearMonth month = currentMonth.minusMonths(i);
-            LocalDate startDate = month.atDay(1);
-            LocalDate endDate = month.atEndOfMonth();
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            monthlyData.put(month, total);
-        }
-        
-        return monthlyData;
+        return monthlyTotals(userId, months, Transaction.TransactionType.INCOME);
     }
     
     public Map<String, Double> getExpensesByCategory(String userId, YearMonth yearMonth) {
-        Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
-        }
-        
-        return categoryData;
+        return getCube(userId).byCategory(yearMonth, Transaction.TransactionType.EXPENSE);
     }
     
     public Map<String, Double> getIncomesByCategory(String userId, YearMonth yearMonth) {
-        Map<String, Double> categoryData = new HashMap<>();
-        
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        Map<String, List<Transaction>> grouped = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .collect(Collectors.groupingBy(t -> 
-                t.getCategoryId() != null ? t.getCategoryId() : "未分类"
-            ));
-        
-        for (Map.Entry<String, List<Transaction>> entry : grouped.entrySet()) {
-            double total = entry.getValue().stream()
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            categoryData.put(entry.getKey(), total);
-        }
-        
-        return categoryData;
+        return getCube(userId).byCategory(yearMonth, Transaction.TransactionType.INCOME);
     }
     
     public Map<Integer, Double> getYearlyExpenses(String userId, int years) {
-        Map<Integer, Double> yearlyData = new HashMap<>();
-        int currentYear = LocalDate.now().getYear();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        for (int i = 0; i < years; i++) {
-            int year = currentYear - i;
-            LocalDate startDate = LocalDate.of(year, 1, 1);
-            LocalDate endDate = LocalDate.of(year, 12, 31);
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            yearlyData.put(year, total);
-        }
-        
-        return yearlyData;
+        return yearlyTotals(userId, years, Transaction.TransactionType.EXPENSE);
     }
     
     public Map<Integer, Double> getYearlyIncome(String userId, int years) {
+        return yearlyTotals(userId, years, Transaction.TransactionType.INCOME);
+    }
+    
+    private Map<YearMonth, Double> monthlyTotals(String userId, int months, Transaction.TransactionType type) {
+        Map<YearMonth, Double> monthlyData = new HashMap<>();
+        YearMonth currentMonth = YearMonth.now();
+        TransactionCube cube = getCube(userId);
+        for (int i = 0; i < months; i++) {
+            YearMonth month = currentMonth.minusMonths(i);
+            monthlyData.put(month, cube.total(month, type));
+        }
+        return monthlyData;
+    }
+    
+    private Map<Integer, Double> yearlyTotals(String userId, int years, Transaction.TransactionType type) {
         Map<Integer, Double> yearlyData = new HashMap<>();
         int currentYear = LocalDate.now().getYear();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
+        TransactionCube cube = getCube(userId);
         for (int i = 0; i < years; i++) {
             int year = currentYear - i;
-            LocalDate startDate = LocalDate.of(year, 1, 1);
-            LocalDate endDate = LocalDate.of(year, 12, 31);
-            
-            double total = transactions.stream()
-                .filter(t -> {
-                    if (t.getDate() == null) return false;
-                    LocalDate transactionDate = t.getDate().toLocalDate();
-                    return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-                })
-                .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-                .mapToDouble(Transaction::getAmount)
-                .sum();
-            
-            yearlyData.put(year, total);
+            yearlyData.put(year, cube.yearTotal(year, type));
         }
-        
         return yearlyData;
     }
     
@@ -252,33 +150,15 @@ public class LocalStatisticService {
     public Map<String, Object> getMonthlyStatistics(String userId, int year, int month) {
         Map<String, Object> stats = new HashMap<>();
         YearMonth yearMonth = YearMonth.of(year, month);
-        LocalDate startDate = yearMonth.atDay(1);
-        LocalDate endDate = yearMonth.atEndOfMonth();
-        
-        List<Transaction> transactions = transactionService.getTransactionsByUserId(userId);
-        
-        List<Transaction> monthTransactions = transactions.stream()
-            .filter(t -> {
-                if (t.getDate() == null) return false;
-                LocalDate transactionDate = t.getDate().toLocalDate();
-                return !transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate);
-            })
-            .collect(Collectors.toList());
-        
-        double totalIncome = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.INCOME)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        TransactionCube cube = getCube(userId);
         
-        double totalExpense = monthTransactions.stream()
-            .filter(t -> t.getType() == Transaction.TransactionType.EXPENSE)
-            .mapToDouble(Transaction::getAmount)
-            .sum();
+        double totalIncome = cube.total(yearMonth, Transaction.TransactionType.INCOME);
+        double totalExpense = cube.total(yearMonth, Transaction.TransactionType.EXPENSE);
         
         stats.put("totalIncome", totalIncome);
         stats.put("totalExpense", totalExpense);
         stats.put("netAmount", totalIncome - totalExpense);
-        stats.put("transactionCount", monthTransactions.size());
+        stats.put("transactionCount", cube.count(yearMonth));
         
         return stats;
     }
@@ -2,40 +2,72 @@ package com.accounting.service.local;
 
 import com.accounting.filter.FilterRule;
 import com.accounting.model.Transaction;
+import com.accounting.storage.ColumnarSegment;
 import com.accounting.storage.StorageManager;
+import com.accounting.storage.TransactionJournal;
+import com.accounting.util.CsvImportResult;
+import com.accounting.util.TransactionCsvImporter;
+import com.accounting.util.TransactionCsvWriter;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * 本地交易服务类
  * 提供账目的增删改查和高级过滤功能
+ * 已结束的月份封存到内存映射的列存段（{@link ColumnarSegment}），内存中只保留当月及尚未封存的交易，
+ * 堆占用随近期数据量增长而不是随全部历史增长。
+ * 内存中的交易放在带 ID 索引的 {@link TransactionTable} 中，按 ID 查询、更新、删除不再线性扫描。
  */
 public class LocalTransactionService {
     private static final String TRANSACTIONS_FILE = "transactions.json";
+    private static final String SEGMENT_PREFIX = "transactions";
+    // 待封存的交易达到该数量，或上个月尚未封存时，才重写列存段
+    private static final int SEAL_BATCH = 1000;
     private StorageManager storageManager;
     private Gson gson;
-    private List<Transaction> transactions;
+    private TransactionJournal journal;
+    private TransactionTable transactions;
+    private ColumnarSegment history;
+    // 列存段中已删除、或被内存中新版本覆盖的行
+    private BitSet hidden = new BitSet();
+    // 列存段无法读取时不再封存，避免新代次覆盖掉旧数据
+    private boolean historyUnavailable;
+    // 数据版本号，每次变更或重新加载后递增，供统计缓存判断是否失效
+    private long version;
+    
+    /**
+     * 交易摘要回调，日期为纪元日
+     */
+    public interface SummaryVisitor {
+        void accept(int epochDay, Transaction.TransactionType type, String categoryId, double amount);
+    }
     
     public LocalTransactionService(StorageManager storageManager) {
         this.storageManager = storageManager;
         JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new com.google.gson.JsonPrimitive(src.toString());
         JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
         this.gson = new GsonBuilder().registerTypeAdapter(LocalDateTime.class, lts).registerTypeAdapter(LocalDateTime.class, ltd).create();
-        this.transactions = new ArrayList<>();
+        this.transactions = new TransactionTable();
+        this.journal = new TransactionJournal(storageManager, TRANSACTIONS_FILE, gson, () -> transactions.values());
         loadTransactions();
+        journal.compactIfNeeded();
     }
     
     /**
@@ -47,8 +79,10 @@ public class LocalTransactionService {
         }
         transaction.setCreatedAt(LocalDateTime.now());
         transaction.setUpdatedAt(LocalDateTime.now());
-        transactions.add(transaction);
-        saveTransactions();
+        shadowHistory(transaction.getId());
+        transactions.put(transaction);
+        journal.appendPut(transaction);
+        version++;
         return transaction;
     }
     
@@ -56,9 +90,21 @@ public class LocalTransactionService {
      * 删除交易
      */
     public boolean deleteTransaction(String transactionId) {
-        boolean removed = transactions.removeIf(t -> t.getId().equals(transactionId));
+        boolean removed = transactions.remove(transactionId) != null;
+        int row = history != null ? history.find(transactionId) : -1;
+        if (row >= 0 && (removed || !hidden.get(row))) {
+            // 已封存的记录只能标记删除，否则重新加载时会从列存段中恢复
+            hidden.set(row);
+            removed = true;
+            try {
+                history.appendDeleted(List.of(transactionId), syncDeletes());
+            } catch (IOException e) {
+                System.err.println("记录历史交易删除失败: " + e.getMessage());
+            }
+        }
         if (removed) {
-            saveTransactions();
+            journal.appendDelete(transactionId);
+            version++;
         }
         return removed;
     }
@@ -67,15 +113,27 @@ public class LocalTransactionService {
      * 更新交易
      */
     public Transaction updateTransaction(String transactionId, Transaction updatedTransaction) {
-        for (int i = 0; i < transactions.size(); i++) {
-            if (transactions.get(i).getId().equals(transactionId)) {
-                updatedTransaction.setId(transactionId);
-                updatedTransaction.setCreatedAt(transactions.get(i).getCreatedAt());
-                updatedTransaction.setUpdatedAt(LocalDateTime.now());
-                transactions.set(i, updatedTransaction);
-                saveTransactions();
-                return updatedTransaction;
-            }
+        Transaction current = transactions.get(transactionId);
+        if (current != null) {
+            updatedTransaction.setId(transactionId);
+            updatedTransaction.setCreatedAt(current.getCreatedAt());
+            updatedTransaction.setUpdatedAt(LocalDateTime.now());
+            transactions.put(updatedTransaction);
+            journal.appendPut(updatedTransaction);
+            version++;
+            return updatedTransaction;
+        }
+        int row = history != null ? history.find(transactionId) : -1;
+        if (row >= 0 && !hidden.get(row)) {
+            // 修改已封存的记录：新版本回到内存，列存段中的旧行被覆盖
+            updatedTransaction.setId(transactionId);
+            updatedTransaction.setCreatedAt(history.read(row).getCreatedAt());
+            updatedTransaction.setUpdatedAt(LocalDateTime.now());
+            hidden.set(row);
+            transactions.put(updatedTransaction);
+            journal.appendPut(updatedTransaction);
+            version++;
+            return updatedTransaction;
         }
         return null;
     }
@@ -84,28 +142,38 @@ public class LocalTransactionService {
      * 根据ID查询交易
      */
     public Transaction getTransactionById(String transactionId) {
-        return transactions.stream()
-            .filter(t -> t.getId().equals(transactionId))
-            .findFirst()
-            .orElse(null);
+        Transaction recent = transactions.get(transactionId);
+        if (recent != null || history == null) {
+            return recent;
+        }
+        int row = history.find(transactionId);
+        return row >= 0 && !hidden.get(row) ? history.read(row) : null;
     }
     
     /**
      * 获取所有交易
      */
     public List<Transaction> getAllTransactions() {
-        loadTransactions();
-        return new ArrayList<>(transactions);
+        reloadIfChanged();
+        List<Transaction> result = new ArrayList<>(getTransactionCount());
+        forEachHistory(null, null, null, result::add);
+        transactions.forEach(result::add);
+        return result;
     }
     
     /**
      * 根据用户ID获取交易
      */
     public List<Transaction> getTransactionsByUserId(String userId) {
-        loadTransactions();
-        return transactions.stream()
-            .filter(t -> userId == null || userId.isEmpty() || userId.equals(t.getUserId()))
-            .collect(Collectors.toList());
+        reloadIfChanged();
+        List<Transaction> result = new ArrayList<>();
+        forEachHistory(userId, null, null, result::add);
+        for (Transaction t : transactions) {
+            if (userId == null || userId.isEmpty() || userId.equals(t.getUserId())) {
+                result.add(t);
+            }
+        }
+        return result;
     }
     
     /**
@@ -115,10 +183,73 @@ public class LocalTransactionService {
         if (rule == null) {
             return getAllTransactions();
         }
-        loadTransactions();
-        return transactions.stream()
-            .filter(rule::test)
-            .collect(Collectors.toList());
+        reloadIfChanged();
+        List<Transaction> result = new ArrayList<>();
+        // 规则中含日期范围时先用日期列剪枝，只解码范围内的历史记录
+        LocalDate[] bounds = dateBounds(rule);
+        forEachHistory(null, bounds[0], bounds[1], t -> {
+            if (rule.test(t)) result.add(t);
+        });
+        for (Transaction t : transactions) {
+            if (rule.test(t)) result.add(t);
+        }
+        return result;
+    }
+    
+    /**
+     * 按用户（null 或空为全部）与日期范围（含两端，null 不限）扫描交易摘要，不构造交易对象
+     * 已封存的月份直接扫描列存段，金额精确到分
+     */
+    public void scanSummaries(String userId, LocalDate from, LocalDate to, SummaryVisitor visitor) {
+        reloadIfChanged();
+        if (history != null) {
+            history.scan(userId, from, to, hidden,
+                (row, day, type, categoryId, cents) -> visitor.accept(day, type, categoryId, cents / 100.0));
+        }
+        for (Transaction t : transactions) {
+            if (t.getDate() == null) continue;
+            if (userId != null && !userId.isEmpty() && !userId.equals(t.getUserId())) continue;
+            LocalDate day = t.getDate().toLocalDate();
+            if ((from != null && day.isBefore(from)) || (to != null && day.isAfter(to))) continue;
+            visitor.accept((int) day.toEpochDay(), t.getType(), t.getCategoryId(), t.getAmount());
+        }
+    }
+    
+    /**
+     * 从过滤规则中提取日期下界与上界（按天），无法确定时对应位置为 null
+     */
+    private static LocalDate[] dateBounds(FilterRule rule) {
+        LocalDate[] bounds = new LocalDate[2];
+        if (rule.getKind() == FilterRule.Kind.DATE_RANGE) {
+            bounds[0] = ((LocalDateTime) rule.getArgument(0)).toLocalDate();
+            bounds[1] = ((LocalDateTime) rule.getArgument(1)).toLocalDate();
+        } else if (rule.getKind() == FilterRule.Kind.AND) {
+            for (FilterRule operand : rule.getOperands()) {
+                LocalDate[] inner = dateBounds(operand);
+                if (inner[0] != null && (bounds[0] == null || inner[0].isAfter(bounds[0]))) bounds[0] = inner[0];
+                if (inner[1] != null && (bounds[1] == null || inner[1].isBefore(bounds[1]))) bounds[1] = inner[1];
+            }
+        }
+        return bounds;
+    }
+    
+    /**
+     * 逐条解码列存段中可见的历史交易
+     */
+    private void forEachHistory(String userId, LocalDate from, LocalDate to, Consumer<Transaction> action) {
+        if (history == null) return;
+        history.scan(userId, from, to, hidden, (row, day, type, categoryId, cents) -> action.accept(history.read(row)));
+    }
+    
+    /**
+     * 内存中的新版本覆盖列存段中的同 ID 记录
+     */
+    private void shadowHistory(String transactionId) {
+        if (history == null) return;
+        int row = history.find(transactionId);
+        if (row >= 0) {
+            hidden.set(row);
+        }
     }
     
     /**
@@ -179,21 +310,11 @@ public class LocalTransactionService {
      * 导出为CSV
      */
     public void exportToCSV(String filePath, List<Transaction> transactions) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath)) {
-            // 写入表头
-            writer.append("ID,用户ID,类型,金额,分类ID,描述,日期,标签\n");
-            
-            // 写入数据
+        try (Writer writer = Files.newBufferedWriter(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            TransactionCsvWriter csv = new TransactionCsvWriter(writer);
+            csv.writeHeader();
             for (Transaction t : transactions) {
-                writer.append(t.getId()).append(",")
-                      .append(t.getUserId() != null ? t.getUserId() : "").append(",")
-                      .append(t.getType() != null ? t.getType().name() : "").append(",")
-                      .append(String.valueOf(t.getAmount())).append(",")
-                      .append(t.getCategoryId() != null ? t.getCategoryId() : "").append(",")
-                      .append(t.getDescription() != null ? t.getDescription().replace(",", "，") : "").append(",")
-                      .append(t.getDate() != null ? t.getDate().toString() : "").append(",")
-                      .append(t.getTags() != null ? t.getTags().replace(",", "，") : "")
-                      .append("\n");
+                csv.write(t);
             }
         }
     }
@@ -201,78 +322,148 @@ public class LocalTransactionService {
     /**
      * 从CSV导入
      */
-    public List<Transaction> importFromCSV(String filePath) throws IOException {
-        List<Transaction> imported = new ArrayList<>();
-        Path path = Paths.get(filePath);
-        
-        try (Reader reader = Files.newBufferedReader(path)) {
-            List<String> lines = Files.readAllLines(path);
-            
-            // 跳过表头
-            for (int i = 1; i < lines.size(); i++) {
-                String[] parts = lines.get(i).split(",");
-                if (parts.length >= 7) {
-                    Transaction t = new Transaction();
-                    t.setId(parts[0]);
-                    t.setUserId(parts[1]);
-                    t.setType(Transaction.TransactionType.valueOf(parts[2]));
-                    t.setAmount(Double.parseDouble(parts[3]));
-                    t.setCategoryId(parts[4]);
-                    t.setDescription(parts[5]);
-                    t.setDate(LocalDateTime.parse(parts[6]));
-                    if (parts.length > 7) {
-                        t.setTags(parts[7]);
-                    }
-                    imported.add(t);
+    public CsvImportResult importFromCSV(String filePath) throws IOException {
+        return importFromCSV(filePath, processed -> { });
+    }
+    
+    /**
+     * 流式导入CSV，每批记录追加一次日志
+     * 已存在的 ID 覆盖原记录，其余追加到列表末尾
+     * @param progress 每批写入后回调已处理的行数
+     */
+    public CsvImportResult importFromCSV(String filePath, LongConsumer progress) throws IOException {
+        reloadIfChanged();
+        CsvImportResult result;
+        try (Reader reader = Files.newBufferedReader(Paths.get(filePath), StandardCharsets.UTF_8)) {
+            result = new TransactionCsvImporter().run(reader, this::importBatch, progress);
+        }
+        sealIfNeeded();
+        return result;
+    }
+    
+    private void importBatch(List<Transaction> batch) {
+        LocalDateTime now = LocalDateTime.now();
+        for (Transaction t : batch) {
+            Transaction existing = transactions.get(t.getId());
+            t.setUpdatedAt(now);
+            if (existing != null) {
+                t.setCreatedAt(existing.getCreatedAt());
+                transactions.put(t);
+            } else {
+                int row = history != null ? history.find(t.getId()) : -1;
+                if (row >= 0 && !hidden.get(row)) {
+                    t.setCreatedAt(history.read(row).getCreatedAt());
+                } else {
+                    t.setCreatedAt(now);
+                }
+                if (row >= 0) {
+                    hidden.set(row);
                 }
+                transactions.put(t);
             }
         }
-        
-        // 添加到现有交易列表
-        for (Transaction t : imported) {
-            addTransaction(t);
+        journal.appendPutAll(batch);
+        version++;
+    }
+    
+    /**
+     * 内存中的交易列表为权威数据，仅当数据文件被外部修改时才重新解析
+     */
+    private void reloadIfChanged() {
+        if (journal.isStale()) {
+            loadTransactions();
         }
-        
-        return imported;
     }
     
     /**
-     * 加载交易数据
+     * 加载交易数据（列存段 + 快照 + 追加日志）
      */
     private void loadTransactions() {
         try {
-            String json = storageManager.readFile(TRANSACTIONS_FILE);
-            if (json != null && !json.trim().isEmpty()) {
-                transactions = gson.fromJson(json, new TypeToken<List<Transaction>>(){}.getType());
-                if (transactions == null) {
-                    transactions = new ArrayList<>();
-                }
-            }
+            transactions = new TransactionTable(journal.load());
         } catch (Exception e) {
             System.err.println("加载交易数据失败: " + e.getMessage());
-            transactions = new ArrayList<>();
+            transactions = new TransactionTable();
+        }
+        loadHistory();
+        version++;
+        sealIfNeeded();
+    }
+    
+    private void loadHistory() {
+        history = null;
+        hidden = new BitSet();
+        historyUnavailable = false;
+        try {
+            history = ColumnarSegment.openLatest(storageManager.getDataPath(), SEGMENT_PREFIX);
+            if (history != null) {
+                for (String id : history.readDeleted()) {
+                    shadowHistory(id);
+                }
+                for (Transaction t : transactions) {
+                    shadowHistory(t.getId());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("加载历史交易失败: " + e.getMessage());
+            history = null;
+            historyUnavailable = true;
         }
     }
     
     /**
-     * 保存交易数据
+     * 把当月之前的交易封存到新代次的列存段
+     * 只在待封存数量较多或跨月后执行，避免每次补记历史交易都重写整个列存段。
+     * 新段写成后才从内存移除并重写快照；中途崩溃时快照里的副本会覆盖列存段中的同 ID 行，结果不变。
      */
-    private void saveTransactions() {
+    private void sealIfNeeded() {
+        if (historyUnavailable) return;
+        YearMonth current = YearMonth.now();
+        LocalDateTime monthStart = current.atDay(1).atStartOfDay();
+        List<Transaction> sealable = new ArrayList<>();
+        List<Transaction> remaining = new ArrayList<>();
+        for (Transaction t : transactions) {
+            if (t.getDate() != null && t.getDate().isBefore(monthStart)) {
+                sealable.add(t);
+            } else {
+                remaining.add(t);
+            }
+        }
+        if (sealable.isEmpty()) return;
+        YearMonth previous = current.minusMonths(1);
+        YearMonth sealedThrough = history != null ? history.getSealedThrough() : null;
+        boolean monthEnded = sealedThrough == null || sealedThrough.isBefore(previous);
+        if (sealable.size() < SEAL_BATCH && !monthEnded) return;
         try {
-            String json = gson.toJson(transactions);
-            storageManager.writeFile(TRANSACTIONS_FILE, json);
-        } catch (Exception e) {
-            System.err.println("保存交易数据失败: " + e.getMessage());
+            ColumnarSegment.write(storageManager.getDataPath(), SEGMENT_PREFIX, history, hidden, sealable, previous);
+            history = ColumnarSegment.openLatest(storageManager.getDataPath(), SEGMENT_PREFIX);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("封存历史交易失败: " + e.getMessage());
+            return;
         }
+        // 被删除或覆盖的旧行已在新段中丢弃
+        hidden = new BitSet();
+        transactions = new TransactionTable(remaining);
+        journal.compactNow();
+        version++;
     }
     
     /**
-     * 批量添加交易
+     * 批量添加交易，整批只追加一次日志
      */
     public void addTransactions(List<Transaction> transactions) {
+        LocalDateTime now = LocalDateTime.now();
         for (Transaction t : transactions) {
-            addTransaction(t);
+            if (t.getId() == null || t.getId().isEmpty()) {
+                t.setId(java.util.UUID.randomUUID().toString());
+            }
+            t.setCreatedAt(now);
+            t.setUpdatedAt(now);
+            shadowHistory(t.getId());
+            this.transactions.put(t);
         }
+        journal.appendPutAll(transactions);
+        version++;
     }
     
     /**
@@ -280,13 +471,56 @@ public class LocalTransactionService {
      */
     public void clearAllTransactions() {
         transactions.clear();
-        saveTransactions();
+        journal.appendClear();
+        version++;
+        if (history != null) {
+            try {
+                ColumnarSegment.write(storageManager.getDataPath(), SEGMENT_PREFIX, null, new BitSet(),
+                    new ArrayList<>(), null);
+                history = ColumnarSegment.openLatest(storageManager.getDataPath(), SEGMENT_PREFIX);
+                hidden = new BitSet();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("清空历史交易失败: " + e.getMessage());
+                // 重写失败时把全部已封存的行记入 .deleted，重启后同样不会恢复
+                hidden.set(0, history.size());
+                List<String> ids = new ArrayList<>(history.size());
+                for (int row = 0; row < history.size(); row++) {
+                    ids.add(history.id(row));
+                }
+                try {
+                    history.appendDeleted(ids, syncDeletes());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException("记录历史交易删除失败", ex);
+                }
+            }
+        }
+    }
+    
+    // 列存段的删除记录按存储的落盘策略同步
+    private boolean syncDeletes() {
+        return storageManager.getSyncMode() != StorageManager.SyncMode.NEVER;
     }
     
     /**
      * 获取交易数量
      */
     public int getTransactionCount() {
-        return transactions.size();
+        int sealed = history != null ? history.size() - hidden.cardinality() : 0;
+        return transactions.size() + sealed;
+    }
+    
+    /**
+     * 获取当前数据版本号
+     */
+    public long getVersion() {
+        reloadIfChanged();
+        return version;
+    }
+    
+    /**
+     * 关闭存储
+     */
+    public void close() {
+        journal.close();
     }
 }
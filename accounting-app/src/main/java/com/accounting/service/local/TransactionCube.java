@@ -0,0 +1,107 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 交易聚合立方体
+ * 一次扫描交易摘要，按（年月 × 类型 × 分类）累加金额，
+ * 月度、年度、净收入及分类序列都从这里直接读取，不再重复扫描交易。
+ */
+public class TransactionCube {
+    private static final String UNCATEGORIZED = "未分类";
+    private static final int TYPES = Transaction.TransactionType.values().length;
+
+    private final Map<YearMonth, Cell> cells = new HashMap<>();
+    // 最近一次命中的月份（纪元日区间），同月的连续记录不必重复换算年月
+    private int monthFirstDay = 1;
+    private int monthLastDay = 0;
+    private Cell monthCell;
+
+    private TransactionCube() {
+    }
+
+    /**
+     * 单次扫描构建立方体，已封存的历史月份直接读列存段，不构造交易对象
+     */
+    public static TransactionCube build(LocalTransactionService transactions, String userId) {
+        TransactionCube cube = new TransactionCube();
+        transactions.scanSummaries(userId, null, null, cube::add);
+        return cube;
+    }
+
+    private void add(int epochDay, Transaction.TransactionType type, String categoryId, double amount) {
+        if (epochDay < monthFirstDay || epochDay > monthLastDay) {
+            YearMonth month = YearMonth.from(LocalDate.ofEpochDay(epochDay));
+            monthFirstDay = (int) month.atDay(1).toEpochDay();
+            monthLastDay = (int) month.atEndOfMonth().toEpochDay();
+            monthCell = cells.computeIfAbsent(month, k -> new Cell());
+        }
+        Cell cell = monthCell;
+        cell.count++;
+        if (type == null) return;
+        int index = type.ordinal();
+        cell.totals[index] += amount;
+        String category = categoryId != null ? categoryId : UNCATEGORIZED;
+        Slice slice = cell.categories.computeIfAbsent(category, k -> new Slice());
+        slice.totals[index] += amount;
+        slice.counts[index]++;
+    }
+
+    /**
+     * 指定月份某类型的合计
+     */
+    public double total(YearMonth yearMonth, Transaction.TransactionType type) {
+        Cell cell = cells.get(yearMonth);
+        return cell == null ? 0 : cell.totals[type.ordinal()];
+    }
+
+    /**
+     * 指定年份某类型的合计
+     */
+    public double yearTotal(int year, Transaction.TransactionType type) {
+        double total = 0;
+        for (int month = 1; month <= 12; month++) {
+            total += total(YearMonth.of(year, month), type);
+        }
+        return total;
+    }
+
+    /**
+     * 指定月份的交易笔数（含所有类型）
+     */
+    public int count(YearMonth yearMonth) {
+        Cell cell = cells.get(yearMonth);
+        return cell == null ? 0 : cell.count;
+    }
+
+    /**
+     * 指定月份某类型按分类的合计，仅包含该类型下有交易的分类
+     */
+    public Map<String, Double> byCategory(YearMonth yearMonth, Transaction.TransactionType type) {
+        Map<String, Double> result = new HashMap<>();
+        Cell cell = cells.get(yearMonth);
+        if (cell == null) return result;
+        int index = type.ordinal();
+        for (Map.Entry<String, Slice> entry : cell.categories.entrySet()) {
+            if (entry.getValue().counts[index] > 0) {
+                result.put(entry.getKey(), entry.getValue().totals[index]);
+            }
+        }
+        return result;
+    }
+
+    private static class Cell {
+        private final double[] totals = new double[TYPES];
+        private final Map<String, Slice> categories = new HashMap<>();
+        private int count;
+    }
+
+    private static class Slice {
+        private final double[] totals = new double[TYPES];
+        private final int[] counts = new int[TYPES];
+    }
+}
@@ -0,0 +1,163 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 内存交易表
+ * 交易按插入顺序存放在槽位数组中，另有 ID → 槽位的哈希索引，按 ID 查询、更新、删除都是 O(1)。
+ * 删除只把槽位置空（墓碑），不移动后面的元素；墓碑多于存活记录时整体压实一次并重建索引，
+ * 均摊后仍为 O(1)，遍历顺序始终与插入顺序一致。
+ */
+class TransactionTable implements Iterable<Transaction> {
+    // 墓碑少于该数量时不压实，避免小表频繁重建
+    private static final int MIN_COMPACT_TOMBSTONES = 64;
+
+    private Transaction[] slots;
+    private final Map<String, Integer> index;
+    private int end;
+    private int live;
+
+    TransactionTable() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * 按列表顺序建表，同 ID 的后一条覆盖前一条（保留前一条的位置）
+     */
+    TransactionTable(List<Transaction> transactions) {
+        this.slots = new Transaction[Math.max(16, transactions.size())];
+        this.index = new HashMap<>(Math.max(16, transactions.size() * 4 / 3 + 1));
+        for (Transaction t : transactions) {
+            put(t);
+        }
+    }
+
+    Transaction get(String id) {
+        Integer slot = index.get(id);
+        return slot == null ? null : slots[slot];
+    }
+
+    boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * 已存在同 ID 的记录时原位替换并返回旧记录，否则追加到末尾并返回 null
+     */
+    Transaction put(Transaction transaction) {
+        Integer slot = index.get(transaction.getId());
+        if (slot != null) {
+            Transaction previous = slots[slot];
+            slots[slot] = transaction;
+            return previous;
+        }
+        if (end == slots.length) {
+            if (end - live >= MIN_COMPACT_TOMBSTONES && end - live >= live / 2) {
+                compact();
+            } else {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+        }
+        index.put(transaction.getId(), end);
+        slots[end++] = transaction;
+        live++;
+        return null;
+    }
+
+    /**
+     * 删除并返回记录，不存在时返回 null
+     */
+    Transaction remove(String id) {
+        Integer slot = index.remove(id);
+        if (slot == null) {
+            return null;
+        }
+        Transaction removed = slots[slot];
+        slots[slot] = null;
+        live--;
+        if (live == 0) {
+            Arrays.fill(slots, 0, end, null);
+            end = 0;
+        } else if (end - live >= MIN_COMPACT_TOMBSTONES && end - live > live) {
+            compact();
+        }
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(slots, 0, end, null);
+        index.clear();
+        end = 0;
+        live = 0;
+    }
+
+    int size() {
+        return live;
+    }
+
+    /**
+     * 按插入顺序返回存活记录的副本
+     */
+    List<Transaction> values() {
+        List<Transaction> result = new ArrayList<>(live);
+        for (Transaction t : this) {
+            result.add(t);
+        }
+        return result;
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return new Iterator<>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < end && slots[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public Transaction next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+                Transaction t = slots[next];
+                next = advance(next + 1);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * 去掉墓碑，存活记录前移并重建索引
+     */
+    private void compact() {
+        int target = 0;
+        for (int i = 0; i < end; i++) {
+            Transaction t = slots[i];
+            if (t != null) {
+                if (target != i) {
+                    slots[target] = t;
+                    index.put(t.getId(), target);
+                }
+                target++;
+            }
+        }
+        Arrays.fill(slots, target, end, null);
+        end = target;
+    }
+}
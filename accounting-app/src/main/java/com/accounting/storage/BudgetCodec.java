@@ -0,0 +1,43 @@
+package com.accounting.storage;
+
+import com.accounting.model.Budget;
+
+/**
+ * 预算记录的紧凑格式编解码
+ */
+public class BudgetCodec implements RecordCodec<Budget> {
+
+    @Override
+    public void write(Budget b, CompactFormat.Output out) {
+        out.writeString(b.getId());
+        out.writeRef(b.getUserId());
+        out.writeRef(b.getCategoryId());
+        out.writeAmount(b.getAmount());
+        out.writeSigned(b.getYear());
+        out.writeSigned(b.getMonth());
+        out.writeDateTime(b.getCreatedAt());
+        out.writeDateTime(b.getUpdatedAt());
+        out.writeDate(b.getStartDate());
+        out.writeRef(b.getPeriodUnit() != null ? b.getPeriodUnit().name() : null);
+        out.writeNullableSigned(b.getPeriodCount() != null ? (long) b.getPeriodCount() : null);
+    }
+
+    @Override
+    public Budget read(CompactFormat.Input in) {
+        Budget b = new Budget();
+        b.setId(in.readString());
+        b.setUserId(in.readRef());
+        b.setCategoryId(in.readRef());
+        b.setAmount(in.readAmount());
+        b.setYear((int) in.readSigned());
+        b.setMonth((int) in.readSigned());
+        b.setCreatedAt(in.readDateTime());
+        b.setUpdatedAt(in.readDateTime());
+        b.setStartDate(in.readDate());
+        String unit = in.readRef();
+        b.setPeriodUnit(unit != null ? Budget.PeriodUnit.valueOf(unit) : null);
+        Long count = in.readNullableSigned();
+        b.setPeriodCount(count != null ? count.intValue() : null);
+        return b;
+    }
+}
@@ -0,0 +1,492 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 已封存月份的只读列存段
+ * 文件一次写成后通过内存映射读取，统计与过滤直接扫描定长列（日期、金额分、类型、用户、分类），
+ * 不需要把历史交易构造成对象；完整记录以紧凑格式存放在同一文件中，按行号随机读取。
+ * 文件名带代次号（prefix-代次.seg），重写时生成新代次，旧文件在下次打开时清理，
+ * 避免替换仍被映射的文件（Windows 下无法删除）。已封存记录的删除写入同代次的 .deleted 文件。
+ */
+public final class ColumnarSegment {
+    private static final byte[] MAGIC = {'A', 'C', 'S', 1};
+    private static final int HEADER_SIZE = 64;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String DELETED_SUFFIX = ".deleted";
+    private static final TransactionCodec CODEC = new TransactionCodec();
+    private static final Transaction.TransactionType[] TYPES = Transaction.TransactionType.values();
+
+    private final Path dir;
+    private final String prefix;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final long generation;
+    private final YearMonth sealedThrough;
+    private final String[] dictionary;
+    private final Map<String, Integer> codes;
+    private final int recordsOffset;
+    private final int centsOffset;
+    private final int recordOffsetsOffset;
+    private final int indexOffset;
+    private final int daysOffset;
+    private final int usersOffset;
+    private final int categoriesOffset;
+    private final int typesOffset;
+
+    /**
+     * 扫描回调，日期为纪元日，金额为分
+     */
+    public interface RowVisitor {
+        void visit(int row, int epochDay, Transaction.TransactionType type, String categoryId, long cents);
+    }
+
+    private ColumnarSegment(Path dir, String prefix, MappedByteBuffer buffer) throws IOException {
+        this.dir = dir;
+        this.prefix = prefix;
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是有效的列存段文件");
+        }
+        this.rows = buffer.getInt(4);
+        this.generation = buffer.getLong(8);
+        int sealed = buffer.getInt(16);
+        this.sealedThrough = sealed < 0 ? null : YearMonth.of(sealed / 12, sealed % 12 + 1);
+        this.recordsOffset = (int) buffer.getLong(24);
+        this.centsOffset = (int) buffer.getLong(32);
+        int dictionaryOffset = (int) buffer.getLong(40);
+        int dictionaryLength = buffer.getInt(48);
+        this.recordOffsetsOffset = centsOffset + 8 * rows;
+        this.indexOffset = recordOffsetsOffset + 8 * (rows + 1);
+        this.daysOffset = indexOffset + 8 * rows;
+        this.usersOffset = daysOffset + 4 * rows;
+        this.categoriesOffset = usersOffset + 4 * rows;
+        this.typesOffset = categoriesOffset + 4 * rows;
+        byte[] words = new byte[dictionaryLength];
+        buffer.get(dictionaryOffset, words);
+        this.dictionary = CompactFormat.decodeDictionary(words);
+        this.codes = new HashMap<>();
+        for (int i = 0; i < dictionary.length; i++) {
+            codes.put(dictionary[i], i + 1);
+        }
+    }
+
+    /**
+     * 打开数据目录中代次最新的列存段，不存在时返回 null；同时清理旧代次文件
+     */
+    public static ColumnarSegment openLatest(Path dir, String prefix) throws IOException {
+        long latest = -1;
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "-*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                long generation = generationOf(file, prefix);
+                if (generation >= 0) {
+                    generations.add(generation);
+                    latest = Math.max(latest, generation);
+                }
+            }
+        }
+        for (long generation : generations) {
+            if (generation != latest) {
+                // 旧文件可能仍被其他实例映射，删除失败时留到下次
+                try {
+                    Files.deleteIfExists(segmentPath(dir, prefix, generation));
+                    Files.deleteIfExists(deletedPath(dir, prefix, generation));
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        if (latest < 0) {
+            return null;
+        }
+        Path path = segmentPath(dir, prefix, latest);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("列存段超过 2GB: " + path.getFileName());
+            }
+            return new ColumnarSegment(dir, prefix, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 写入新代次的列存段：保留旧段中未被删除的行，追加新封存的交易（日期不能为空）
+     * 先写临时文件再原子改名，返回新段所在路径
+     */
+    public static Path write(Path dir, String prefix, ColumnarSegment base, BitSet dropRows,
+                             List<Transaction> added, YearMonth sealedThrough) throws IOException {
+        long generation = Math.max(System.currentTimeMillis(), base == null ? 0 : base.generation + 1);
+        Path target = segmentPath(dir, prefix, generation);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        int kept = 0;
+        int baseRows = base == null ? 0 : base.rows;
+        for (int row = 0; row < baseRows; row++) {
+            if (!dropRows.get(row)) kept++;
+        }
+        int rows = kept + added.size();
+        long[] cents = new long[rows];
+        long[] recordOffsets = new long[rows + 1];
+        long[] index = new long[rows];
+        int[] days = new int[rows];
+        int[] users = new int[rows];
+        int[] categories = new int[rows];
+        byte[] types = new byte[rows];
+
+        Map<String, Integer> words = new HashMap<>();
+        if (base != null) {
+            for (int i = 0; i < base.dictionary.length; i++) {
+                words.put(base.dictionary[i], i);
+            }
+        }
+        CompactFormat.Output record = new CompactFormat.Output(words, 256);
+        List<Transaction> sorted = new ArrayList<>(added);
+        sorted.sort(Comparator.comparing(Transaction::getDate));
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Sink out = new Sink(channel);
+            out.skip(HEADER_SIZE);
+            long recordBytes = 0;
+            int r = 0;
+            // 旧段的字典编号保持不变，记录字节与列值可以原样复制
+            for (int row = 0; row < baseRows; row++) {
+                if (dropRows.get(row)) continue;
+                byte[] bytes = base.recordBytes(row);
+                out.put(bytes, bytes.length);
+                cents[r] = base.cents(row);
+                days[r] = base.epochDay(row);
+                users[r] = base.buffer.getInt(base.usersOffset + 4 * row);
+                categories[r] = base.buffer.getInt(base.categoriesOffset + 4 * row);
+                types[r] = base.buffer.get(base.typesOffset + row);
+                index[r] = indexKey(idOf(bytes), r);
+                recordOffsets[r] = recordBytes;
+                recordBytes += bytes.length;
+                r++;
+            }
+            for (Transaction t : sorted) {
+                record.reset();
+                CODEC.write(t, record);
+                out.put(record.buffer(), record.size());
+                cents[r] = Math.round(t.getAmount() * 100);
+                days[r] = (int) t.getDate().toLocalDate().toEpochDay();
+                users[r] = record.ref(t.getUserId());
+                categories[r] = record.ref(t.getCategoryId());
+                types[r] = (byte) (t.getType() == null ? 0 : t.getType().ordinal() + 1);
+                index[r] = indexKey(t.getId(), r);
+                recordOffsets[r] = recordBytes;
+                recordBytes += record.size();
+                r++;
+            }
+            recordOffsets[rows] = recordBytes;
+            Arrays.sort(index);
+
+            long columnsOffset = HEADER_SIZE + recordBytes;
+            for (long v : cents) out.putLong(v);
+            for (long v : recordOffsets) out.putLong(v);
+            for (long v : index) out.putLong(v);
+            for (int v : days) out.putInt(v);
+            for (int v : users) out.putInt(v);
+            for (int v : categories) out.putInt(v);
+            out.put(types, types.length);
+            long dictionaryOffset = out.position();
+            byte[] dictionary = CompactFormat.encodeDictionary(words);
+            out.put(dictionary, dictionary.length);
+            if (out.position() > Integer.MAX_VALUE) {
+                throw new IOException("列存段超过 2GB");
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(MAGIC);
+            header.putInt(rows);
+            header.putLong(generation);
+            header.putInt(sealedThrough == null ? -1 : sealedThrough.getYear() * 12 + sealedThrough.getMonthValue() - 1);
+            header.putInt(0);
+            header.putLong(HEADER_SIZE);
+            header.putLong(columnsOffset);
+            header.putLong(dictionaryOffset);
+            header.putInt(dictionary.length);
+            header.rewind();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        StorageManager.syncDirectory(dir);
+        return target;
+    }
+
+    /**
+     * 行数（含已删除的行）
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * 已封存到的月份（含），无封存数据时为 null
+     */
+    public YearMonth getSealedThrough() {
+        return sealedThrough;
+    }
+
+    /**
+     * 按 ID 查找行号，不存在时返回 -1
+     */
+    public int find(String id) {
+        if (id == null || rows == 0) {
+            return -1;
+        }
+        long key = (long) id.hashCode() << 32;
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (indexAt(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        // 哈希可能冲突，逐个核对 ID
+        for (int i = low; i < rows && (indexAt(i) >>> 32) == (key >>> 32); i++) {
+            int row = (int) indexAt(i);
+            if (id.equals(idAt(row))) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 读取完整交易记录
+     */
+    public Transaction read(int row) {
+        byte[] bytes = recordBytes(row);
+        return CODEC.read(new CompactFormat.Input(bytes, 0, bytes.length, dictionary));
+    }
+
+    public int epochDay(int row) {
+        return buffer.getInt(daysOffset + 4 * row);
+    }
+
+    public long cents(int row) {
+        return buffer.getLong(centsOffset + 8 * row);
+    }
+
+    /**
+     * 用户的字典编号，null 表示不限用户，-1 表示段内没有该用户
+     */
+    public int userCode(String userId) {
+        if (userId == null || userId.isEmpty()) {
+            return 0;
+        }
+        return codes.getOrDefault(userId, -1);
+    }
+
+    public boolean matchesUser(int row, int userCode) {
+        return userCode == 0 || buffer.getInt(usersOffset + 4 * row) == userCode;
+    }
+
+    /**
+     * 扫描指定用户（null 为全部）在日期范围内（含两端，null 不限）的行，跳过 skipRows 中的行
+     */
+    public void scan(String userId, LocalDate from, LocalDate to, BitSet skipRows, RowVisitor visitor) {
+        int user = userCode(userId);
+        if (user < 0) {
+            return;
+        }
+        int fromDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        int toDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        for (int row = 0; row < rows; row++) {
+            int day = epochDay(row);
+            if (day < fromDay || day > toDay || skipRows.get(row) || !matchesUser(row, user)) continue;
+            int type = buffer.get(typesOffset + row);
+            int category = buffer.getInt(categoriesOffset + 4 * row);
+            visitor.visit(row, day, type == 0 ? null : TYPES[type - 1],
+                    category == 0 ? null : dictionary[category - 1], cents(row));
+        }
+    }
+
+    /**
+     * 读取本代次已删除的 ID
+     */
+    public Set<String> readDeleted() throws IOException {
+        Path deleted = deletedPath(dir, prefix, generation);
+        Set<String> ids = new HashSet<>();
+        if (Files.exists(deleted)) {
+            for (String line : Files.readAllLines(deleted, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) ids.add(line.trim());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 记录删除已封存的交易，整批一次追加
+     * sync 为 true 时追加后 fsync，新建文件时同时 fsync 所在目录；崩溃留下的半行不匹配任何 ID，读取时无害
+     */
+    public void appendDeleted(Collection<String> ids, boolean sync) throws IOException {
+        if (ids.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (String id : ids) {
+            lines.append(id).append('\n');
+        }
+        Path deleted = deletedPath(dir, prefix, generation);
+        boolean created = !Files.exists(deleted);
+        try (FileChannel channel = FileChannel.open(deleted, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        }
+        if (sync && created) {
+            StorageManager.syncDirectory(dir);
+        }
+    }
+
+    /**
+     * 指定行的交易 ID
+     */
+    public String id(int row) {
+        return idAt(row);
+    }
+
+    private long indexAt(int i) {
+        return buffer.getLong(indexOffset + 8 * i);
+    }
+
+    private byte[] recordBytes(int row) {
+        int start = (int) buffer.getLong(recordOffsetsOffset + 8 * row);
+        int end = (int) buffer.getLong(recordOffsetsOffset + 8 * (row + 1));
+        byte[] bytes = new byte[end - start];
+        buffer.get(recordsOffset + start, bytes);
+        return bytes;
+    }
+
+    /**
+     * 只解码记录的第一个字段（ID）
+     */
+    private String idAt(int row) {
+        return idOf(recordBytes(row));
+    }
+
+    private static String idOf(byte[] record) {
+        return new CompactFormat.Input(record, 0, record.length, null).readString();
+    }
+
+    /**
+     * 索引项：高 32 位为 ID 哈希，低 32 位为行号，按有符号长整数排序即可二分查找
+     */
+    private static long indexKey(String id, int row) {
+        return ((long) id.hashCode() << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static Path segmentPath(Path dir, String prefix, long generation) {
+        return dir.resolve(prefix + "-" + generation + SEGMENT_SUFFIX);
+    }
+
+    private static Path deletedPath(Path dir, String prefix, long generation) {
+        return dir.resolve(prefix + "-" + generation + DELETED_SUFFIX);
+    }
+
+    private static long generationOf(Path file, String prefix) {
+        String name = file.getFileName().toString();
+        String digits = name.substring(prefix.length() + 1, name.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 带缓冲的顺序写入
+     */
+    private static final class Sink {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Sink(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void skip(int bytes) throws IOException {
+            flush();
+            position += bytes;
+            channel.position(position);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void put(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+            position += length;
+        }
+
+        long position() {
+            return position;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
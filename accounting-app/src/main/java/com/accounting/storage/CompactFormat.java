@@ -0,0 +1,326 @@
+package com.accounting.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制存储格式
+ * 文件结构：魔数 "ACF" + 版本号，字典（重复出现的字符串，如用户ID、分类ID、类型），
+ * 记录数，随后每条记录为“长度前缀 + 字段”。整数均为变长编码，有符号数先做 zigzag；
+ * 日期存为 UTC 纪元毫秒（精确到毫秒），金额能用两位小数精确表示时存为“分”，否则存原始 double。
+ */
+public final class CompactFormat {
+    private static final byte[] MAGIC = {'A', 'C', 'F'};
+    private static final byte VERSION = 1;
+
+    private CompactFormat() {
+    }
+
+    /**
+     * 按文件头判断是否为紧凑格式
+     */
+    public static boolean isCompact(byte[] data) {
+        return data.length > MAGIC.length
+                && Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC);
+    }
+
+    public static <T> byte[] encode(List<T> records, RecordCodec<T> codec) {
+        Output body = new Output(new HashMap<>(), Math.max(64, records.size() * 64));
+        Output record = new Output(body.dictionary, 256);
+        for (T r : records) {
+            record.reset();
+            codec.write(r, record);
+            body.writeVarLong(record.size);
+            body.writeRaw(record.buffer, 0, record.size);
+        }
+        byte[] dictionary = encodeDictionary(body.dictionary);
+        Output file = new Output(null, body.size + dictionary.length + 16);
+        file.writeRaw(MAGIC, 0, MAGIC.length);
+        file.writeRaw(new byte[]{VERSION}, 0, 1);
+        file.writeRaw(dictionary, 0, dictionary.length);
+        file.writeVarLong(records.size());
+        file.writeRaw(body.buffer, 0, body.size);
+        return Arrays.copyOf(file.buffer, file.size);
+    }
+
+    public static <T> List<T> decode(byte[] data, RecordCodec<T> codec) {
+        if (!isCompact(data)) {
+            throw new IllegalArgumentException("不是紧凑格式的数据文件");
+        }
+        Input in = new Input(data, MAGIC.length, data.length, null);
+        int version = in.data[in.pos++];
+        if (version != VERSION) {
+            throw new IllegalArgumentException("不支持的紧凑格式版本: " + version);
+        }
+        String[] words = in.readDictionary();
+        int count = (int) in.readVarLong();
+        List<T> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = (int) in.readVarLong();
+            records.add(codec.read(new Input(data, in.pos, in.pos + length, words)));
+            in.pos += length;
+        }
+        return records;
+    }
+
+    /**
+     * 按编号顺序编码字典：条目数 + 各字符串
+     */
+    static byte[] encodeDictionary(Map<String, Integer> dictionary) {
+        String[] words = new String[dictionary.size()];
+        for (Map.Entry<String, Integer> e : dictionary.entrySet()) {
+            words[e.getValue()] = e.getKey();
+        }
+        Output out = new Output(null, words.length * 40 + 8);
+        out.writeVarLong(words.length);
+        for (String word : words) {
+            out.writeString(word);
+        }
+        return Arrays.copyOf(out.buffer, out.size);
+    }
+
+    static String[] decodeDictionary(byte[] data) {
+        return new Input(data, 0, data.length, null).readDictionary();
+    }
+
+    /**
+     * 记录写入缓冲
+     */
+    public static final class Output {
+        private final Map<String, Integer> dictionary;
+        private byte[] buffer;
+        private int size;
+
+        Output(Map<String, Integer> dictionary, int capacity) {
+            this.dictionary = dictionary;
+            this.buffer = new byte[capacity];
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        private void writeRaw(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        public void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        public void writeSigned(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * 可为 null 的字符串：长度 + 1，0 表示 null
+         */
+        public void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            writeRaw(bytes, 0, bytes.length);
+        }
+
+        /**
+         * 写入字典编号（编号 + 1，0 表示 null），适合取值重复度高的字段
+         */
+        public void writeRef(String value) {
+            writeVarLong(ref(value));
+        }
+
+        /**
+         * 字典编号 + 1，0 表示 null；未出现过的字符串追加到字典末尾
+         */
+        int ref(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = dictionary.get(value);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.put(value, id);
+            }
+            return id + 1;
+        }
+
+        public void writeDateTime(LocalDateTime value) {
+            writeNullableSigned(value == null ? null : value.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+
+        public void writeDate(LocalDate value) {
+            writeNullableSigned(value == null ? null : value.toEpochDay());
+        }
+
+        /**
+         * 可为 null 的有符号数：zigzag + 1，0 表示 null；Long.MIN_VALUE 加一后溢出为 0，不能写入
+         */
+        public void writeNullableSigned(Long value) {
+            if (value == null) {
+                writeVarLong(0);
+            } else if (value == Long.MIN_VALUE) {
+                throw new IllegalArgumentException("超出可表示范围: " + value);
+            } else {
+                writeVarLong(((value << 1) ^ (value >> 63)) + 1);
+            }
+        }
+
+        /**
+         * 金额：能用“分”精确表示时写 (分 << 1)，否则写标记 1 加 8 字节 double
+         */
+        public void writeAmount(double amount) {
+            long cents = Math.round(amount * 100);
+            if (Math.abs(cents) < (1L << 52) && cents / 100.0 == amount) {
+                writeVarLong(((cents << 1) ^ (cents >> 63)) << 1);
+                return;
+            }
+            writeVarLong(1);
+            long bits = Double.doubleToRawLongBits(amount);
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[size++] = (byte) (bits >>> (8 * i));
+            }
+        }
+    }
+
+    /**
+     * 记录读取视图
+     */
+    public static final class Input {
+        private final byte[] data;
+        private final int end;
+        private final String[] dictionary;
+        private int pos;
+
+        Input(byte[] data, int pos, int end, String[] dictionary) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+            this.dictionary = dictionary;
+        }
+
+        /**
+         * 当前记录是否还有未读字段
+         */
+        public boolean hasRemaining() {
+            return pos < end;
+        }
+
+        public long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                if (pos >= end) {
+                    throw new IllegalArgumentException("紧凑格式数据被截断");
+                }
+                byte b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        public long readSigned() {
+            long raw = readVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        public String readString() {
+            int length = (int) readVarLong();
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (pos + length > end) {
+                throw new IllegalArgumentException("紧凑格式数据被截断");
+            }
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private String[] readDictionary() {
+            String[] words = new String[(int) readVarLong()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = readString();
+            }
+            return words;
+        }
+
+        public String readRef() {
+            int id = (int) readVarLong();
+            return id == 0 ? null : dictionary[id - 1];
+        }
+
+        public LocalDateTime readDateTime() {
+            Long millis = readNullableSigned();
+            return millis == null ? null
+                    : LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                    (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+        }
+
+        public LocalDate readDate() {
+            Long day = readNullableSigned();
+            return day == null ? null : LocalDate.ofEpochDay(day);
+        }
+
+        public Long readNullableSigned() {
+            long raw = readVarLong();
+            if (raw == 0) {
+                return null;
+            }
+            raw--;
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        public double readAmount() {
+            long raw = readVarLong();
+            if ((raw & 1) == 0) {
+                long zigzag = raw >>> 1;
+                long cents = (zigzag >>> 1) ^ -(zigzag & 1);
+                return cents / 100.0;
+            }
+            if (pos + 8 > end) {
+                throw new IllegalArgumentException("紧凑格式数据被截断");
+            }
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (long) (data[pos++] & 0xFF) << (8 * i);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.accounting.storage;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 追加文件的组提交
+ * 写入方在自己的锁内写完并刷新缓冲后领取序号，然后在锁外调用 {@link #await(long)}。
+ * ALWAYS 模式下第一个拿到同步锁的线程执行一次 fsync，覆盖此前所有已写入的序号，其余线程直接返回；
+ * BATCHED 模式由后台线程每隔固定时间同步一次，写入方不等待；NEVER 模式只交给操作系统缓存。
+ */
+public class GroupCommit {
+    private final FileChannel channel;
+    private final StorageManager.SyncMode mode;
+    private final Object syncLock = new Object();
+    private final ScheduledFuture<?> periodic;
+    private long written;
+    private volatile long synced;
+
+    GroupCommit(FileChannel channel, StorageManager.SyncMode mode,
+                ScheduledExecutorService scheduler, long intervalMillis) {
+        this.channel = channel;
+        this.mode = mode;
+        this.periodic = mode == StorageManager.SyncMode.BATCHED
+                ? scheduler.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS)
+                : null;
+    }
+
+    /**
+     * 登记一次已写入（已刷新到通道）的数据，返回其序号
+     */
+    public synchronized long written() {
+        return ++written;
+    }
+
+    /**
+     * 按策略等待序号对应的数据落盘
+     */
+    public void await(long ticket) throws IOException {
+        if (mode == StorageManager.SyncMode.ALWAYS && synced < ticket) {
+            sync();
+        }
+    }
+
+    /**
+     * 关闭前把已写入的数据落盘（NEVER 模式除外），并停止定时同步
+     */
+    public void close() throws IOException {
+        if (periodic != null) {
+            periodic.cancel(false);
+        }
+        if (mode != StorageManager.SyncMode.NEVER) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        synchronized (syncLock) {
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            if (synced >= target || !channel.isOpen()) {
+                return;
+            }
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (ClosedChannelException e) {
+            // 通道已随日志轮转关闭，关闭前已同步过
+        } catch (IOException e) {
+            System.err.println("同步日志文件失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.accounting.storage;
+
+/**
+ * 紧凑格式中单条记录的编解码
+ * 字段按固定顺序读写；新增字段只能追加在末尾，读取时用 {@link CompactFormat.Input#hasRemaining()} 兼容旧记录
+ */
+public interface RecordCodec<T> {
+    void write(T record, CompactFormat.Output out);
+
+    T read(CompactFormat.Input in);
+}
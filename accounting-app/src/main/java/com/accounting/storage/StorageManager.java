@@ -1,20 +1,87 @@
 package com.accounting.storage;
 
+import com.google.gson.Gson;
+
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 存储管理器
  * 负责本地文件的读写操作
+ * 整文件写入一律先写临时文件再原子改名，崩溃时只会留下旧文件或新文件，不会留下写了一半的文件。
+ * 落盘策略（系统属性 accounting.storage.fsync）：
+ * always 每次写入都 fsync；batched（默认）整文件写入合并后每隔 accounting.storage.fsync-interval-ms 毫秒写一次，
+ * 追加日志按同一间隔同步；never 只交给操作系统缓存。
+ * 本地服务修改内存状态后调用 {@link #markDirty(String, Supplier)} 标记文件待写，由后台线程按同一间隔统一编码写出，
+ * 连续修改只写一次；{@link #flush()} 或进程退出时写出剩余内容。
  */
 public class StorageManager {
     private static final String DATA_DIR = "data";
+    /** 记录文件格式，可用系统属性 accounting.storage.format=json 切回 JSON */
+    private static final String FORMAT_PROPERTY = "accounting.storage.format";
+    private static final String SYNC_PROPERTY = "accounting.storage.fsync";
+    private static final String SYNC_INTERVAL_PROPERTY = "accounting.storage.fsync-interval-ms";
+    private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
     private Path dataPath;
+    private final Format format;
+    private final SyncMode syncMode;
+    private final long syncIntervalMillis;
+    private final ScheduledExecutorService syncer;
+    // 尚未写出的整文件内容，按文件合并，只保留最新一份
+    private final Map<Path, PendingWrite> pending = new LinkedHashMap<>();
+    // 串行化写出，避免旧版本晚于新版本落盘
+    private final Object flushLock = new Object();
+    
+    /**
+     * 记录文件的存储格式
+     */
+    public enum Format {
+        JSON, COMPACT
+    }
+    
+    /**
+     * 落盘策略
+     */
+    public enum SyncMode {
+        ALWAYS, BATCHED, NEVER
+    }
     
     public StorageManager() {
-        this.dataPath = Paths.get(DATA_DIR);
+        this(Paths.get(DATA_DIR));
+    }
+    
+    /**
+     * 使用指定的数据目录
+     */
+    public StorageManager(Path dataPath) {
+        this.dataPath = dataPath;
+        this.format = "json".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY)) ? Format.JSON : Format.COMPACT;
+        this.syncMode = parseSyncMode(System.getProperty(SYNC_PROPERTY));
+        this.syncIntervalMillis = Math.max(1, Long.getLong(SYNC_INTERVAL_PROPERTY, DEFAULT_SYNC_INTERVAL_MILLIS));
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "storage-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(this::flushQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        // 正常退出时写出合并中的内容
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly, "storage-flush"));
         try {
             if (!Files.exists(dataPath)) {
                 Files.createDirectories(dataPath);
@@ -24,23 +91,222 @@ public class StorageManager {
         }
     }
     
+    private static SyncMode parseSyncMode(String value) {
+        if (value == null || value.isBlank()) {
+            return SyncMode.BATCHED;
+        }
+        try {
+            return SyncMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("未知的落盘策略: " + value + "，使用 batched");
+            return SyncMode.BATCHED;
+        }
+    }
+    
     /**
      * 读取文件内容
      */
     public String readFile(String fileName) throws IOException {
+        byte[] data = readBytes(dataPath.resolve(fileName));
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 写入文件内容（原子替换）
+     */
+    public void writeFile(String fileName, String content) throws IOException {
+        write(dataPath.resolve(fileName), content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 读取记录文件，按文件头自动识别紧凑格式或 JSON
+     * 配置为紧凑格式而文件仍是 JSON 时，读取后一次性改写为紧凑格式，原文件备份为 .bak
+     */
+    public <T> List<T> readRecords(String fileName, RecordCodec<T> codec, Gson gson, Type listType) throws IOException {
         Path filePath = dataPath.resolve(fileName);
+        byte[] data = readBytes(filePath);
+        if (data == null) {
+            return new ArrayList<>();
+        }
+        if (CompactFormat.isCompact(data)) {
+            return CompactFormat.decode(data, codec);
+        }
+        String json = new String(data, StandardCharsets.UTF_8);
+        List<T> records = json.trim().isEmpty() ? null : gson.fromJson(json, listType);
+        if (records == null) {
+            records = new ArrayList<>();
+        }
+        if (format == Format.COMPACT && !records.isEmpty()) {
+            Files.copy(filePath, dataPath.resolve(fileName + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            replaceFile(fileName, CompactFormat.encode(records, codec));
+        }
+        return records;
+    }
+    
+    /**
+     * 按当前格式写入记录文件（原子替换）
+     */
+    public <T> void writeRecords(String fileName, List<T> records, RecordCodec<T> codec, Gson gson) throws IOException {
+        write(dataPath.resolve(fileName), encodeRecords(records, codec, gson));
+    }
+    
+    /**
+     * 按当前格式编码记录，供需要自行控制写入时机的调用方使用
+     */
+    public <T> byte[] encodeRecords(List<T> records, RecordCodec<T> codec, Gson gson) {
+        if (format == Format.JSON) {
+            return gson.toJson(records).getBytes(StandardCharsets.UTF_8);
+        }
+        return CompactFormat.encode(records, codec);
+    }
+    
+    /**
+     * 立即原子替换文件，不参与合并；除 NEVER 外改名前先 fsync 临时文件
+     * 用于写完后马上要删除其他文件的场景（如快照写完后删除轮转日志）
+     */
+    public void replaceFile(String fileName, byte[] data) throws IOException {
+        Path target = dataPath.resolve(fileName);
+        synchronized (flushLock) {
+            synchronized (pending) {
+                pending.remove(target);
+            }
+            replaceNow(target, data);
+        }
+    }
+    
+    /**
+     * 标记文件内容已变化，由后台线程稍后调用 encoder 编码并原子替换
+     * encoder 在后台线程执行，调用方需保证它与修改内存状态的操作互斥
+     */
+    public void markDirty(String fileName, Supplier<byte[]> encoder) {
+        synchronized (pending) {
+            pending.put(dataPath.resolve(fileName), new PendingWrite(encoder));
+        }
+    }
+    
+    /**
+     * 为追加写入的文件通道创建组提交对象，按当前落盘策略同步该文件
+     */
+    public GroupCommit openGroupCommit(FileChannel channel) {
+        return new GroupCommit(channel, syncMode, syncer, syncIntervalMillis);
+    }
+    
+    /**
+     * 写出所有合并中的整文件内容
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            Map<Path, PendingWrite> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+            }
+            IOException failure = null;
+            for (Map.Entry<Path, PendingWrite> e : batch.entrySet()) {
+                try {
+                    replaceNow(e.getKey(), e.getValue().content.get());
+                } catch (IOException ex) {
+                    failure = ex;
+                    continue;
+                } catch (RuntimeException ex) {
+                    failure = new IOException("编码 " + e.getKey().getFileName() + " 失败", ex);
+                    continue;
+                }
+                // 写出后才移出队列，期间的读取仍能拿到最新内容；写出期间再次标记的新条目保留
+                synchronized (pending) {
+                    pending.remove(e.getKey(), e.getValue());
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+    
+    /**
+     * 当前记录文件格式
+     */
+    public Format getFormat() {
+        return format;
+    }
+    
+    /**
+     * 当前落盘策略
+     */
+    public SyncMode getSyncMode() {
+        return syncMode;
+    }
+    
+    private void write(Path target, byte[] data) throws IOException {
+        if (syncMode == SyncMode.BATCHED) {
+            synchronized (pending) {
+                pending.put(target, new PendingWrite(() -> data));
+            }
+            return;
+        }
+        // 与 flush、replaceFile 串行，同一目标的临时文件不会被两个线程同时写
+        synchronized (flushLock) {
+            replaceNow(target, data);
+        }
+    }
+    
+    private byte[] readBytes(Path filePath) throws IOException {
+        PendingWrite write;
+        synchronized (pending) {
+            write = pending.get(filePath);
+        }
+        // 在锁外编码，encoder 可能需要获取调用方自己的锁
+        if (write != null) {
+            return write.content.get();
+        }
         if (!Files.exists(filePath)) {
             return null;
         }
-        return Files.readString(filePath);
+        return Files.readAllBytes(filePath);
     }
     
     /**
-     * 写入文件内容
+     * 先写临时文件再原子替换，避免写到一半时留下损坏的文件
+     * 调用方须持有 flushLock；除 NEVER 外改名后再 fsync 所在目录，使改名本身也已落盘
      */
-    public void writeFile(String fileName, String content) throws IOException {
-        Path filePath = dataPath.resolve(fileName);
-        Files.writeString(filePath, content);
+    private void replaceNow(Path target, byte[] data) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (syncMode != SyncMode.NEVER) {
+                channel.force(true);
+            }
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (syncMode != SyncMode.NEVER) {
+            syncDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+    
+    /**
+     * fsync 目录，使其中的改名、新建落盘
+     * 部分平台（如 Windows）不支持打开目录，此时由文件系统自行保证
+     */
+    static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // 不支持目录 fsync 的平台上忽略
+        }
+    }
+    
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            System.err.println("写入数据文件失败: " + e.getMessage());
+        }
     }
     
     /**
@@ -48,6 +314,11 @@ public class StorageManager {
      */
     public boolean fileExists(String fileName) {
         Path filePath = dataPath.resolve(fileName);
+        synchronized (pending) {
+            if (pending.containsKey(filePath)) {
+                return true;
+            }
+        }
         return Files.exists(filePath);
     }
     
@@ -56,11 +327,28 @@ public class StorageManager {
      */
     public boolean deleteFile(String fileName) throws IOException {
         Path filePath = dataPath.resolve(fileName);
-        if (Files.exists(filePath)) {
-            Files.delete(filePath);
-            return true;
+        synchronized (flushLock) {
+            boolean wasPending;
+            synchronized (pending) {
+                wasPending = pending.remove(filePath) != null;
+            }
+            if (Files.exists(filePath)) {
+                Files.delete(filePath);
+                return true;
+            }
+            return wasPending;
+        }
+    }
+    
+    /**
+     * 待写出的整文件内容；每次写入或标记都是新对象，写出后按对象身份移出队列
+     */
+    private static final class PendingWrite {
+        private final Supplier<byte[]> content;
+        
+        PendingWrite(Supplier<byte[]> content) {
+            this.content = content;
         }
-        return false;
     }
     
     /**
@@ -70,4 +358,3 @@ public class StorageManager {
         return dataPath;
     }
 }
-
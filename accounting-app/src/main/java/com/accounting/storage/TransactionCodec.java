@@ -0,0 +1,41 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+
+/**
+ * 交易记录的紧凑格式编解码
+ * 用户ID、分类ID、类型走字典，描述与标签按原文存储
+ */
+public class TransactionCodec implements RecordCodec<Transaction> {
+
+    @Override
+    public void write(Transaction t, CompactFormat.Output out) {
+        out.writeString(t.getId());
+        out.writeRef(t.getUserId());
+        out.writeRef(t.getType() != null ? t.getType().name() : null);
+        out.writeAmount(t.getAmount());
+        out.writeRef(t.getCategoryId());
+        out.writeString(t.getDescription());
+        out.writeDateTime(t.getDate());
+        out.writeDateTime(t.getCreatedAt());
+        out.writeDateTime(t.getUpdatedAt());
+        out.writeString(t.getTags());
+    }
+
+    @Override
+    public Transaction read(CompactFormat.Input in) {
+        Transaction t = new Transaction();
+        t.setId(in.readString());
+        t.setUserId(in.readRef());
+        String type = in.readRef();
+        t.setType(type != null ? Transaction.TransactionType.valueOf(type) : null);
+        t.setAmount(in.readAmount());
+        t.setCategoryId(in.readRef());
+        t.setDescription(in.readString());
+        t.setDate(in.readDateTime());
+        t.setCreatedAt(in.readDateTime());
+        t.setUpdatedAt(in.readDateTime());
+        t.setTags(in.readString());
+        return t;
+    }
+}
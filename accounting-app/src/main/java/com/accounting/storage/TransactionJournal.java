@@ -0,0 +1,464 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 交易追加日志
+ * 每次变更只向日志文件追加一行记录，日志超过阈值后在后台压缩为快照。
+ * 启动时先读取快照，再按顺序重放日志，得到最新数据。快照格式由 {@link StorageManager} 决定，日志始终为 JSON 行。
+ */
+public class TransactionJournal {
+    private static final long DEFAULT_COMPACT_THRESHOLD = 1024 * 1024;
+    private static final Type LIST_TYPE = new TypeToken<List<Transaction>>(){}.getType();
+    private static final TransactionCodec CODEC = new TransactionCodec();
+
+    private final StorageManager storageManager;
+    private final String snapshotFile;
+    private final String journalFile;
+    private final String rotatedFile;
+    private final Gson gson;
+    private final Supplier<List<Transaction>> stateSupplier;
+    private final long compactThreshold;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    // 快照与轮转日志的读写锁，压缩线程只持有该锁，不阻塞追加
+    private final Object snapshotLock = new Object();
+    private Writer writer;
+    private FileChannel channel;
+    private GroupCommit commit;
+    // 快照加载失败时暂停压缩，避免用空状态覆盖原快照；新的变更仍追加到日志
+    private volatile boolean loadFailed;
+    private long journalSize;
+    // 最近一次由本进程加载或写入后的文件状态，用于判断文件是否被外部修改
+    private volatile FileStamp knownStamp;
+
+    public TransactionJournal(StorageManager storageManager, String snapshotFile, Gson gson,
+                              Supplier<List<Transaction>> stateSupplier) {
+        this(storageManager, snapshotFile, gson, stateSupplier, DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    public TransactionJournal(StorageManager storageManager, String snapshotFile, Gson gson,
+                              Supplier<List<Transaction>> stateSupplier, long compactThreshold) {
+        this.storageManager = storageManager;
+        this.snapshotFile = snapshotFile;
+        this.journalFile = snapshotFile + ".journal";
+        this.rotatedFile = snapshotFile + ".journal.old";
+        this.gson = gson;
+        this.stateSupplier = stateSupplier;
+        this.compactThreshold = compactThreshold;
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 加载快照并重放日志
+     * 文件状态在读取前记录，加载失败时同样记录：损坏的文件不再变化时，不会在每次读取时重复解析；
+     * 读取期间文件被修改则状态不一致，下次读取时重新加载
+     */
+    public synchronized List<Transaction> load() throws IOException {
+        synchronized (snapshotLock) {
+            loadFailed = true;
+            truncateTornTail(resolve(rotatedFile));
+            truncateTornTail(resolve(journalFile));
+            FileStamp stamp = currentStamp();
+            try {
+                Map<String, Transaction> state = new LinkedHashMap<>();
+                for (Transaction t : storageManager.readRecords(snapshotFile, CODEC, gson, LIST_TYPE)) {
+                    state.put(t.getId(), t);
+                }
+                replay(rotatedFile, state);
+                replay(journalFile, state);
+                Path journalPath = resolve(journalFile);
+                journalSize = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+                loadFailed = false;
+                return new ArrayList<>(state.values());
+            } finally {
+                knownStamp = stamp;
+            }
+        }
+    }
+
+    /**
+     * 判断数据文件自上次加载/写入后是否被外部修改
+     * 只比较文件大小与修改时间，不读取文件内容
+     */
+    public boolean isStale() {
+        return !currentStamp().equals(knownStamp);
+    }
+
+    /**
+     * 记录新增或更新
+     */
+    public void appendPut(Transaction transaction) {
+        append(Entry.put(transaction));
+    }
+
+    /**
+     * 批量记录新增或更新，整批只刷新一次文件
+     */
+    public void appendPutAll(List<Transaction> transactions) {
+        List<Entry> entries = new ArrayList<>(transactions.size());
+        for (Transaction t : transactions) {
+            entries.add(Entry.put(t));
+        }
+        append(entries);
+    }
+
+    /**
+     * 记录删除
+     */
+    public void appendDelete(String transactionId) {
+        append(Entry.delete(transactionId));
+    }
+
+    /**
+     * 记录清空
+     */
+    public void appendClear() {
+        append(Entry.clear());
+    }
+
+    /**
+     * 日志超过阈值时触发压缩
+     */
+    public synchronized void compactIfNeeded() {
+        if (journalSize >= compactThreshold) {
+            requestCompaction();
+        }
+    }
+
+    /**
+     * 立即轮转日志并在后台重写快照，用于内存状态整体变化（如历史月份封存）之后
+     */
+    public synchronized void compactNow() {
+        requestCompaction();
+    }
+
+    /**
+     * 关闭日志文件
+     * 等待进行中的压缩写完快照，否则随后打开的新实例可能读到旧快照、而轮转日志已被删除
+     */
+    public void close() {
+        synchronized (this) {
+            closeWriter();
+        }
+        compactor.shutdown();
+        try {
+            // 压缩任务结束时需要获取本对象的锁，这里不能持锁等待
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(Entry entry) {
+        append(Collections.singletonList(entry));
+    }
+
+    /**
+     * 在锁内写入并刷新缓冲，在锁外按落盘策略等待同步，并发写入方可以共用一次 fsync
+     */
+    private void append(List<Entry> entries) {
+        GroupCommit pendingCommit;
+        long ticket;
+        synchronized (this) {
+            try {
+                if (writer == null) {
+                    // 上次写入失败可能留下半行，新记录不能接在它后面
+                    truncateTornTail(resolve(journalFile));
+                    channel = FileChannel.open(resolve(journalFile), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+                    commit = storageManager.openGroupCommit(channel);
+                }
+                for (Entry entry : entries) {
+                    String line = gson.toJson(entry) + "\n";
+                    writer.write(line);
+                    journalSize += line.getBytes(StandardCharsets.UTF_8).length;
+                }
+                writer.flush();
+                pendingCommit = commit;
+                ticket = commit.written();
+                knownStamp = currentStamp();
+            } catch (IOException e) {
+                System.err.println("写入交易日志失败: " + e.getMessage());
+                closeWriter();
+                return;
+            }
+            if (journalSize >= compactThreshold) {
+                requestCompaction();
+            }
+        }
+        try {
+            pendingCommit.await(ticket);
+        } catch (IOException e) {
+            System.err.println("同步交易日志失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 轮转当前日志并在后台写入快照
+     * 日志记录均为幂等操作，压缩中途崩溃时重放轮转日志仍能得到正确结果
+     */
+    private void requestCompaction() {
+        if (loadFailed) {
+            System.err.println("交易快照加载失败，暂停压缩以免覆盖原数据");
+            return;
+        }
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        List<Transaction> state;
+        try {
+            state = new ArrayList<>(stateSupplier.get());
+            closeWriter();
+            rotate();
+            journalSize = 0;
+            knownStamp = currentStamp();
+        } catch (IOException e) {
+            System.err.println("轮转交易日志失败: " + e.getMessage());
+            compacting.set(false);
+            return;
+        }
+        compactor.submit(() -> {
+            try {
+                writeSnapshot(state);
+                synchronized (this) {
+                    knownStamp = currentStamp();
+                }
+            } catch (Exception e) {
+                System.err.println("压缩交易日志失败: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    private void rotate() throws IOException {
+        Path journalPath = resolve(journalFile);
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            Path rotatedPath = resolve(rotatedFile);
+            if (Files.exists(rotatedPath)) {
+                // 上次压缩未完成，合并到旧日志后再继续
+                Files.write(rotatedPath, Files.readAllBytes(journalPath), StandardOpenOption.APPEND);
+                Files.delete(journalPath);
+            } else {
+                Files.move(journalPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private void writeSnapshot(List<Transaction> state) throws IOException {
+        byte[] data = storageManager.encodeRecords(state, CODEC, gson);
+        synchronized (snapshotLock) {
+            // 快照落盘后才能删除轮转日志
+            storageManager.replaceFile(snapshotFile, data);
+            Files.deleteIfExists(resolve(rotatedFile));
+        }
+    }
+
+    private void replay(String fileName, Map<String, Transaction> state) throws IOException {
+        Path path = resolve(fileName);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                Entry entry;
+                try {
+                    entry = gson.fromJson(line, Entry.class);
+                } catch (Exception e) {
+                    // 末尾的半行已在加载时截掉，这里只可能是中间被外部破坏的行，跳过该行继续重放
+                    System.err.println("跳过损坏的交易日志记录: " + fileName);
+                    continue;
+                }
+                if (entry == null || entry.op == null) continue;
+                switch (entry.op) {
+                    case PUT:
+                        if (entry.tx != null) state.put(entry.tx.getId(), entry.tx);
+                        break;
+                    case DELETE:
+                        state.remove(entry.id);
+                        break;
+                    case CLEAR:
+                        state.clear();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 截掉文件末尾没有换行结束的半行记录（写入中途崩溃的残留），
+     * 否则下一条追加的记录会接在半行后面，重放时两条一起丢失
+     */
+    private static void truncateTornTail(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long end = size;
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (end > 0) {
+                int n = (int) Math.min(buffer.capacity(), end);
+                long start = end - n;
+                buffer.clear().limit(n);
+                while (buffer.hasRemaining() && ch.read(buffer, start + buffer.position()) >= 0) {
+                    // 读满整块
+                }
+                int i = n - 1;
+                while (i >= 0 && buffer.get(i) != '\n') {
+                    i--;
+                }
+                if (i >= 0) {
+                    end = start + i + 1;
+                    break;
+                }
+                end = start;
+            }
+            if (end < size) {
+                System.err.println("截掉交易日志末尾不完整的记录: " + path.getFileName() + "，" + (size - end) + " 字节");
+                ch.truncate(end);
+            }
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+            commit.close();
+        } catch (IOException e) {
+            System.err.println("同步交易日志失败: " + e.getMessage());
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("关闭交易日志失败: " + e.getMessage());
+        }
+        writer = null;
+        channel = null;
+        commit = null;
+    }
+
+    private Path resolve(String fileName) {
+        return storageManager.getDataPath().resolve(fileName);
+    }
+
+    private FileStamp currentStamp() {
+        return new FileStamp(stat(snapshotFile), stat(rotatedFile), stat(journalFile));
+    }
+
+    private long[] stat(String fileName) {
+        try {
+            Path path = resolve(fileName);
+            if (!Files.exists(path)) {
+                return new long[]{-1, -1};
+            }
+            FileTime modified = Files.getLastModifiedTime(path);
+            return new long[]{Files.size(path), modified.toMillis()};
+        } catch (IOException e) {
+            return new long[]{-1, -1};
+        }
+    }
+
+    /**
+     * 快照、轮转日志、当前日志三个文件的大小与修改时间
+     */
+    private static class FileStamp {
+        private final long[] snapshot;
+        private final long[] rotated;
+        private final long[] journal;
+
+        FileStamp(long[] snapshot, long[] rotated, long[] journal) {
+            this.snapshot = snapshot;
+            this.rotated = rotated;
+            this.journal = journal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FileStamp)) return false;
+            FileStamp other = (FileStamp) o;
+            return java.util.Arrays.equals(snapshot, other.snapshot)
+                    && java.util.Arrays.equals(rotated, other.rotated)
+                    && java.util.Arrays.equals(journal, other.journal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(java.util.Arrays.hashCode(snapshot), java.util.Arrays.hashCode(rotated),
+                    java.util.Arrays.hashCode(journal));
+        }
+    }
+
+    private enum Op {
+        PUT, DELETE, CLEAR
+    }
+
+    private static class Entry {
+        private Op op;
+        private String id;
+        private Transaction tx;
+
+        static Entry put(Transaction tx) {
+            Entry e = new Entry();
+            e.op = Op.PUT;
+            e.id = tx.getId();
+            e.tx = tx;
+            return e;
+        }
+
+        static Entry delete(String id) {
+            Entry e = new Entry();
+            e.op = Op.DELETE;
+            e.id = id;
+            return e;
+        }
+
+        static Entry clear() {
+            Entry e = new Entry();
+            e.op = Op.CLEAR;
+            return e;
+        }
+    }
+}
@@ -8,8 +8,10 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * 桌面端 API 客户端 (Desktop API Client)
@@ -87,13 +89,21 @@ public class ApiClient {
      */
     public List<Transaction> listTransactions() {
         try {
-            HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/sync/transactions"))
+            // 使用 NDJSON 流式接口，按行解析，不必先把整个响应读成一个字符串
+            HttpRequest req = HttpRequest.newBuilder(URI.create(baseUrl + "/api/sync/transactions/stream"))
                     .header("Authorization", "Bearer " + token)
                     .GET()
                     .build();
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
-            if (resp.statusCode() != 200) throw new RuntimeException("list failed: " + resp.statusCode());
-            return mapper.readValue(resp.body(), mapper.getTypeFactory().constructCollectionType(List.class, Transaction.class));
+            HttpResponse<Stream<String>> resp = client.send(req, HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = resp.body()) {
+                if (resp.statusCode() != 200) throw new RuntimeException("list failed: " + resp.statusCode());
+                List<Transaction> result = new ArrayList<>();
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (line.isBlank()) continue;
+                    result.add(mapper.readValue(line, Transaction.class));
+                }
+                return result;
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -40,6 +40,9 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 public class MainApplication extends Application {
+    private StorageManager storage;
+    private LocalTransactionService transactionService;
+
     public static void main(String[] args) {
         launch(args);
     }
@@ -49,8 +52,9 @@ public class MainApplication extends Application {
         try {
             stage.setTitle("iBudget");
             TabPane tabPane = new TabPane();
-            StorageManager storage = new StorageManager();
+            storage = new StorageManager();
             LocalTransactionService ts = new LocalTransactionService(storage);
+            transactionService = ts;
             LocalBudgetService bs = new LocalBudgetService(storage, ts);
             LocalStatisticService ss = new LocalStatisticService(ts);
             LocalAIAnalysisService aiService = new LocalAIAnalysisService();
@@ -509,4 +513,21 @@ public class MainApplication extends Application {
             t.printStackTrace();
         }
     }
+
+    /**
+     * 退出前写出尚未落盘的数据
+     */
+    @Override
+    public void stop() {
+        if (transactionService != null) {
+            transactionService.close();
+        }
+        if (storage != null) {
+            try {
+                storage.flush();
+            } catch (Exception e) {
+                System.err.println("保存数据失败: " + e.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,75 @@
+package com.accounting.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CSV 导入结果
+ * 记录成功与失败的行数；失败原因只保留前若干条，避免错误行过多时占满内存
+ */
+public class CsvImportResult {
+    static final int MAX_RECORDED_ERRORS = 100;
+
+    private long imported;
+    private long failed;
+    private final List<RowError> errors = new ArrayList<>();
+
+    void addImported(long count) {
+        imported += count;
+    }
+
+    void addError(long line, String message) {
+        failed++;
+        if (errors.size() < MAX_RECORDED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    /**
+     * 成功导入的行数
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * 校验失败被跳过的行数
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * 失败行的行号与原因（最多 100 条）
+     */
+    public List<RowError> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * 单行错误
+     */
+    public static class RowError {
+        private final long line;
+        private final String message;
+
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "第 " + line + " 行: " + message;
+        }
+    }
+}
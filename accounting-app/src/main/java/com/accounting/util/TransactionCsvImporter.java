@@ -0,0 +1,216 @@
+package com.accounting.util;
+
+import com.accounting.model.Transaction;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 交易 CSV 流式导入
+ * 读取线程按 RFC 4180 逐条解析记录并分块，字段校验与对象构建交给工作线程池，
+ * 校验通过的记录按文件顺序逐批交给调用方提交。同时在途的分块数有上限，内存占用与文件大小无关。
+ * 列顺序与导出一致：ID,用户ID,类型,金额,分类ID,描述,日期[,标签]，首行为表头。
+ * OpenCSV 按行读取后拼接，引号内的 CRLF 读回为 \n。
+ */
+public class TransactionCsvImporter {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int MIN_COLUMNS = 7;
+    private static final AtomicInteger THREAD_SEQ = new AtomicInteger();
+
+    private final int batchSize;
+    private final int workers;
+
+    public TransactionCsvImporter() {
+        this(DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TransactionCsvImporter(int batchSize, int workers) {
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * 导入整个文件
+     * @param batchSink 在调用线程中按文件顺序接收每批校验通过的交易，抛出异常会中止导入
+     * @param progress 每提交一批后回调已处理（含失败）的行数
+     */
+    public CsvImportResult run(Reader reader, Consumer<List<Transaction>> batchSink, LongConsumer progress)
+            throws IOException {
+        CsvImportResult result = new CsvImportResult();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "csv-import-" + THREAD_SEQ.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        long[] processed = new long[1];
+        try (CSVReader csv = new CSVReaderBuilder(reader)
+                .withCSVParser(new RFC4180ParserBuilder().build())
+                .build()) {
+            skipHeader(csv, result);
+            Chunk chunk = new Chunk(batchSize);
+            while (true) {
+                String[] record;
+                try {
+                    record = csv.readNext();
+                } catch (CsvValidationException e) {
+                    result.addError(csv.getLinesRead(), e.getMessage());
+                    processed[0]++;
+                    continue;
+                }
+                if (record == null) break;
+                if (record.length == 1 && record[0].isBlank()) continue;
+                chunk.add(record, csv.getLinesRead());
+                if (chunk.size() == batchSize) {
+                    Chunk full = chunk;
+                    inFlight.addLast(pool.submit(full::parse));
+                    chunk = new Chunk(batchSize);
+                    // 在途分块达到上限时先提交最早的一块，保持顺序并限制内存
+                    if (inFlight.size() >= workers * 2) {
+                        commit(inFlight.removeFirst(), batchSink, result, processed, progress);
+                    }
+                }
+            }
+            if (chunk.size() > 0) {
+                inFlight.addLast(pool.submit(chunk::parse));
+            }
+            while (!inFlight.isEmpty()) {
+                commit(inFlight.removeFirst(), batchSink, result, processed, progress);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    private static void skipHeader(CSVReader csv, CsvImportResult result) throws IOException {
+        try {
+            csv.readNext();
+        } catch (CsvValidationException e) {
+            result.addError(csv.getLinesRead(), e.getMessage());
+        }
+    }
+
+    private static void commit(Future<Chunk> future, Consumer<List<Transaction>> batchSink,
+                               CsvImportResult result, long[] processed, LongConsumer progress) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("导入被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("解析CSV失败: " + e.getCause().getMessage(), e.getCause());
+        }
+        if (!chunk.valid.isEmpty()) {
+            batchSink.accept(chunk.valid);
+            result.addImported(chunk.valid.size());
+        }
+        for (int i = 0; i < chunk.errorLines.size(); i++) {
+            result.addError(chunk.errorLines.get(i), chunk.errorMessages.get(i));
+        }
+        processed[0] += chunk.size();
+        progress.accept(processed[0]);
+    }
+
+    /**
+     * 解析并校验一行，ID 为空时保留新生成的 ID
+     */
+    static Transaction parse(String[] parts) {
+        if (parts.length < MIN_COLUMNS) {
+            throw new IllegalArgumentException("列数不足: " + parts.length);
+        }
+        Transaction t = new Transaction();
+        String id = blankToNull(parts[0]);
+        if (id != null) {
+            t.setId(id);
+        }
+        t.setUserId(blankToNull(parts[1]));
+        try {
+            t.setType(Transaction.TransactionType.valueOf(parts[2].trim()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("未知的交易类型: " + parts[2]);
+        }
+        double amount;
+        try {
+            amount = Double.parseDouble(parts[3].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("金额格式错误: " + parts[3]);
+        }
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("金额格式错误: " + parts[3]);
+        }
+        t.setAmount(amount);
+        t.setCategoryId(blankToNull(parts[4]));
+        t.setDescription(parts[5]);
+        try {
+            t.setDate(LocalDateTime.parse(parts[6].trim()));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("日期格式错误: " + parts[6]);
+        }
+        if (parts.length > MIN_COLUMNS) {
+            t.setTags(blankToNull(parts[7]));
+        }
+        return t;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    /**
+     * 一批原始记录及其解析结果
+     */
+    private static class Chunk {
+        private final List<String[]> records;
+        private final List<Long> lines;
+        private final List<Transaction> valid;
+        private final List<Long> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+
+        Chunk(int capacity) {
+            this.records = new ArrayList<>(capacity);
+            this.lines = new ArrayList<>(capacity);
+            this.valid = new ArrayList<>(capacity);
+        }
+
+        void add(String[] record, long line) {
+            records.add(record);
+            lines.add(line);
+        }
+
+        int size() {
+            return lines.size();
+        }
+
+        Chunk parse() {
+            for (int i = 0; i < records.size(); i++) {
+                try {
+                    valid.add(TransactionCsvImporter.parse(records.get(i)));
+                } catch (RuntimeException e) {
+                    errorLines.add(lines.get(i));
+                    errorMessages.add(e.getMessage());
+                }
+            }
+            // 解析完成后不再需要原始字段
+            records.clear();
+            return this;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.accounting.util;
+
+import com.accounting.model.Transaction;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+/**
+ * 交易 CSV 写入器
+ * 按 RFC 4180 输出：含逗号、引号、换行或首尾空白的字段加双引号，字段内的引号写成两个，行以 CRLF 结尾。
+ * 列顺序与 {@link TransactionCsvImporter} 一致，导出的文件可以原样导入。
+ */
+public class TransactionCsvWriter implements Consumer<Transaction> {
+    public static final String HEADER = "ID,用户ID,类型,金额,分类ID,描述,日期,标签";
+    private static final String LINE_END = "\r\n";
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public TransactionCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * 写入表头
+     */
+    public void writeHeader() throws IOException {
+        out.write(HEADER);
+        out.write(LINE_END);
+    }
+
+    /**
+     * 写入一行交易
+     */
+    public void write(Transaction t) throws IOException {
+        line.setLength(0);
+        field(t.getId()).append(',');
+        field(t.getUserId()).append(',');
+        field(t.getType() != null ? t.getType().name() : null).append(',');
+        line.append(t.getAmount()).append(',');
+        field(t.getCategoryId()).append(',');
+        field(t.getDescription()).append(',');
+        field(t.getDate() != null ? t.getDate().toString() : null).append(',');
+        field(t.getTags());
+        line.append(LINE_END);
+        out.append(line);
+    }
+
+    @Override
+    public void accept(Transaction t) {
+        try {
+            write(t);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private StringBuilder field(String value) {
+        if (value == null || value.isEmpty()) {
+            return line;
+        }
+        if (!needsQuoting(value)) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static boolean needsQuoting(String value) {
+        if (Character.isWhitespace(value.charAt(0)) || Character.isWhitespace(value.charAt(value.length() - 1))) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package com.accounting.chart;
+
+import com.accounting.model.Transaction;
+import com.accounting.service.local.LocalStatisticService;
+import com.accounting.service.local.LocalTransactionService;
+import com.accounting.storage.StorageManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 图表刷新基准
+ * 每次刷新都新建统计服务，立方体需重新扫描全部交易；序列长度从 12 个月增加到 120 个月时，
+ * 额外开销只有 O(range) 次查表，刷新耗时应基本不变。
+ * 计时结果受机器负载影响，不参与默认的 mvn test，用 mvn test -Pbenchmark 运行
+ */
+public class ChartAnalyzerBenchmark {
+    private static final String USER = "bench";
+    private static final int MONTHS = 120;
+    private static final int PER_MONTH = 500;
+    private static final String[] CATEGORIES = {"food", "rent", "travel", "salary"};
+    private static final int WARMUP = 5;
+    private static final int RUNS = 11;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalTransactionService transactions;
+
+    @Before
+    public void setUp() {
+        StorageManager storage = new StorageManager(folder.getRoot().toPath());
+        LocalTransactionService writer = new LocalTransactionService(storage);
+        List<Transaction> batch = new ArrayList<>();
+        YearMonth current = YearMonth.now();
+        for (int m = 0; m < MONTHS; m++) {
+            YearMonth month = current.minusMonths(m);
+            for (int i = 0; i < PER_MONTH; i++) {
+                Transaction.TransactionType type = i % 5 == 0
+                        ? Transaction.TransactionType.INCOME : Transaction.TransactionType.EXPENSE;
+                Transaction t = new Transaction(USER, type, 10 + i % 90, CATEGORIES[i % CATEGORIES.length], "t" + i);
+                t.setDate(LocalDateTime.of(month.getYear(), month.getMonthValue(), 1 + i % 28, 12, 0));
+                batch.add(t);
+            }
+        }
+        writer.addTransactions(batch);
+        writer.close();
+        // 重新打开时把历史月份封存到列存段，与桌面端长期使用后的状态一致
+        transactions = new LocalTransactionService(storage);
+    }
+
+    @After
+    public void tearDown() {
+        transactions.close();
+    }
+
+    @Test
+    public void refreshCostStaysFlatAsRangeGrows() {
+        assertEquals(MONTHS * PER_MONTH, transactions.getTransactionCount());
+        for (int i = 0; i < WARMUP; i++) {
+            refresh(12);
+            refresh(MONTHS);
+        }
+        long small = median(12);
+        long large = median(MONTHS);
+        System.out.printf("图表刷新 %d 笔交易: 12 个月 %.2f ms, %d 个月 %.2f ms%n",
+                MONTHS * PER_MONTH, small / 1e6, MONTHS, large / 1e6);
+        // 允许计时抖动，但不能随范围线性增长（线性增长时约为 10 倍）
+        assertTrue("120 个月刷新耗时 " + large + "ns，12 个月 " + small + "ns",
+                large < small * 3 + 5_000_000L);
+    }
+
+    private long median(int months) {
+        long[] samples = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            refresh(months);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[RUNS / 2];
+    }
+
+    /**
+     * 与主界面一次刷新相同的调用；新建统计服务使缓存的立方体失效
+     */
+    private void refresh(int months) {
+        ChartAnalyzer analyzer = new ChartAnalyzer(new LocalStatisticService(transactions));
+        YearMonth now = YearMonth.now();
+        analyzer.categoryExpense(USER, now);
+        analyzer.categoryIncome(USER, now);
+        List<Double> expenses = analyzer.monthlyExpensesSeries(USER, months);
+        analyzer.monthlyIncomeSeries(USER, months);
+        analyzer.monthlyNetSeries(USER, months);
+        analyzer.yearlyNetSeries(USER, months / 12);
+        assertEquals(months, expenses.size());
+    }
+}
@@ -0,0 +1,159 @@
+package com.accounting.chart;
+
+import com.accounting.model.Transaction;
+import com.accounting.service.local.LocalStatisticService;
+import com.accounting.service.local.LocalTransactionService;
+import com.accounting.storage.StorageManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 立方体给出的序列必须与逐月直接累加交易的结果一致，
+ * 数据同时覆盖已封存的历史月份、封存后新增的交易和被删除的封存交易
+ */
+public class ChartAnalyzerTest {
+    private static final String USER = "u1";
+    private static final String OTHER = "u2";
+    private static final String[] CATEGORIES = {"food", "rent", null};
+    private static final YearMonth NOW = YearMonth.of(2024, 6);
+    private static final Clock CLOCK = Clock.fixed(
+            NOW.atDay(15).atStartOfDay(ZoneId.systemDefault()).toInstant(), ZoneId.systemDefault());
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Transaction> expected = new ArrayList<>();
+    private LocalTransactionService transactions;
+    private ChartAnalyzer analyzer;
+
+    @Before
+    public void setUp() {
+        StorageManager storage = new StorageManager(folder.getRoot().toPath());
+        Random random = new Random(42);
+        LocalTransactionService writer = new LocalTransactionService(storage);
+        writer.addTransactions(generate(random, 600));
+        writer.close();
+        // 重新打开时历史月份封存到列存段，之后的写入留在内存表
+        transactions = new LocalTransactionService(storage);
+        for (int i = 0; i < 30; i++) {
+            Transaction removed = expected.remove(random.nextInt(expected.size()));
+            transactions.deleteTransaction(removed.getId());
+        }
+        transactions.addTransactions(generate(random, 100));
+        analyzer = new ChartAnalyzer(new LocalStatisticService(transactions), CLOCK);
+    }
+
+    @After
+    public void tearDown() {
+        transactions.close();
+    }
+
+    @Test
+    public void monthlySeriesMatchNaiveAggregation() {
+        int months = 36;
+        List<Double> expenses = analyzer.monthlyExpensesSeries(USER, months);
+        List<Double> incomes = analyzer.monthlyIncomeSeries(USER, months);
+        List<Double> net = analyzer.monthlyNetSeries(USER, months);
+        assertEquals(months, expenses.size());
+        for (int i = 0; i < months; i++) {
+            YearMonth month = NOW.minusMonths(months - 1 - i);
+            double expense = naiveTotal(month, Transaction.TransactionType.EXPENSE);
+            double income = naiveTotal(month, Transaction.TransactionType.INCOME);
+            assertEquals(month + " 支出", expense, expenses.get(i), 1e-6);
+            assertEquals(month + " 收入", income, incomes.get(i), 1e-6);
+            assertEquals(month + " 净收入", income - expense, net.get(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void yearlySeriesMatchNaiveAggregation() {
+        int years = 4;
+        List<Double> expenses = analyzer.yearlyExpensesSeries(USER, years);
+        List<Double> incomes = analyzer.yearlyIncomeSeries(USER, years);
+        List<Double> net = analyzer.yearlyNetSeries(USER, years);
+        assertEquals(years, expenses.size());
+        for (int i = 0; i < years; i++) {
+            int year = NOW.getYear() - (years - 1 - i);
+            double expense = 0;
+            double income = 0;
+            for (int month = 1; month <= 12; month++) {
+                expense += naiveTotal(YearMonth.of(year, month), Transaction.TransactionType.EXPENSE);
+                income += naiveTotal(YearMonth.of(year, month), Transaction.TransactionType.INCOME);
+            }
+            assertEquals(year + " 支出", expense, expenses.get(i), 1e-6);
+            assertEquals(year + " 收入", income, incomes.get(i), 1e-6);
+            assertEquals(year + " 净收入", income - expense, net.get(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void categoryTotalsMatchNaiveAggregation() {
+        for (int m = 0; m < 30; m++) {
+            YearMonth month = NOW.minusMonths(m);
+            assertCategories(month, Transaction.TransactionType.EXPENSE, analyzer.categoryExpense(USER, month));
+            assertCategories(month, Transaction.TransactionType.INCOME, analyzer.categoryIncome(USER, month));
+        }
+    }
+
+    private void assertCategories(YearMonth month, Transaction.TransactionType type, Map<String, Double> actual) {
+        Map<String, Double> naive = new HashMap<>();
+        for (Transaction t : expected) {
+            if (matches(t, month, type)) {
+                String category = t.getCategoryId() != null ? t.getCategoryId() : "未分类";
+                naive.merge(category, t.getAmount(), Double::sum);
+            }
+        }
+        assertEquals(month + " " + type, naive.keySet(), actual.keySet());
+        for (Map.Entry<String, Double> entry : naive.entrySet()) {
+            assertEquals(month + " " + entry.getKey(), entry.getValue(), actual.get(entry.getKey()), 1e-6);
+        }
+    }
+
+    private double naiveTotal(YearMonth month, Transaction.TransactionType type) {
+        double total = 0;
+        for (Transaction t : expected) {
+            if (matches(t, month, type)) total += t.getAmount();
+        }
+        return total;
+    }
+
+    private static boolean matches(Transaction t, YearMonth month, Transaction.TransactionType type) {
+        return USER.equals(t.getUserId()) && t.getType() == type && YearMonth.from(t.getDate()).equals(month);
+    }
+
+    /**
+     * 从 2022 年 1 月到 2024 年 8 月随机分布，包括当前月之后的月份和另一个用户的交易
+     */
+    private List<Transaction> generate(Random random, int count) {
+        List<Transaction> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String user = random.nextInt(5) == 0 ? OTHER : USER;
+            Transaction.TransactionType type = random.nextInt(3) == 0
+                    ? Transaction.TransactionType.INCOME : Transaction.TransactionType.EXPENSE;
+            double amount = random.nextInt(100_000) / 100.0;
+            Transaction t = new Transaction(user, type, amount,
+                    CATEGORIES[random.nextInt(CATEGORIES.length)], "t" + i);
+            YearMonth month = YearMonth.of(2022, 1).plusMonths(random.nextInt(32));
+            t.setDate(LocalDateTime.of(month.getYear(), month.getMonthValue(),
+                    1 + random.nextInt(month.lengthOfMonth()), random.nextInt(24), 0));
+            batch.add(t);
+        }
+        expected.addAll(batch);
+        return batch;
+    }
+}
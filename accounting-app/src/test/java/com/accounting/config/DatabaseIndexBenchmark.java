@@ -0,0 +1,160 @@
+package com.accounting.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 索引基准
+ * 100 万笔交易、100 万条同步日志分布在 1000 个用户上，先在没有索引的旧库上计时，
+ * 再由 DatabaseIndexInitializer 补建索引后重新计时；查询与 DatabaseIndexQueryPlanTest 检查的相同。
+ * 计时结果受机器负载影响，不参与默认的 mvn test，用 mvn test -Pbenchmark 运行
+ */
+public class DatabaseIndexBenchmark {
+    private static final int ROWS = 1_000_000;
+    private static final int USERS = 1000;
+    private static final long START = 1577836800000L;
+    private static final long SPAN = 5L * 365 * 86_400_000L;
+    private static final String[] CATEGORIES = {"food", "rent", "travel", "salary"};
+    private static final int RUNS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = DatabaseIndexInitializerTest.createSchema(folder.newFile("bench.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (String index : jdbcTemplate.queryForList(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL", String.class)) {
+            jdbcTemplate.execute("DROP INDEX " + index);
+        }
+        populate();
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void indexesSpeedUpHotQueries() {
+        Map<String, Long> before = measureAll();
+        new DatabaseIndexInitializer(jdbcTemplate).afterSingletonsInstantiated();
+        Map<String, Long> after = measureAll();
+        System.out.printf("%d 笔交易、%d 条同步日志、%d 个用户（中位数）:%n", ROWS, ROWS, USERS);
+        for (String name : before.keySet()) {
+            System.out.printf("  %-22s %9.2f ms -> %7.2f ms%n", name, before.get(name) / 1e6, after.get(name) / 1e6);
+        }
+        for (String name : before.keySet()) {
+            assertTrue(name + " 建索引前 " + before.get(name) + "ns，建索引后 " + after.get(name) + "ns",
+                after.get(name) * 5 < before.get(name));
+        }
+    }
+
+    private Map<String, Long> measureAll() {
+        long mid = START + SPAN / 2;
+        Map<String, Long> timings = new LinkedHashMap<>();
+        timings.put("findVisibleForUser", median(() -> jdbcTemplate.queryForList(
+            "SELECT * FROM transactions WHERE user_id IS NULL OR user_id = ?", "u7")));
+        timings.put("sumAmount", median(() -> jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = ? AND type = ? " +
+            "AND date BETWEEN ? AND ?", Double.class, "u7", "EXPENSE", mid, mid + 30 * 86_400_000L)));
+        timings.put("sumAmountByCategory", median(() -> jdbcTemplate.queryForObject(
+            "SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = ? AND category_id = ? " +
+            "AND type = ? AND date BETWEEN ? AND ?", Double.class, "u7", "food", "EXPENSE",
+            mid, mid + 30 * 86_400_000L)));
+        timings.put("findPage", median(() -> jdbcTemplate.queryForList(
+            "SELECT * FROM transactions WHERE (user_id IS NULL OR user_id = ?) " +
+            "AND date >= ? AND (date > ? OR id > ?) ORDER BY date, id LIMIT 101", "u7", mid, mid, "")));
+        timings.put("findChanges", median(() -> jdbcTemplate.queryForList(
+            "SELECT * FROM sync_log_v2 WHERE user_id = ? AND version > ? AND version <= ? ORDER BY version LIMIT 501",
+            "u7", 500L, (long) ROWS)));
+        timings.put("getMaxVersion", median(() -> jdbcTemplate.queryForObject(
+            "SELECT COALESCE(MAX(version), 0) FROM sync_log_v2 WHERE user_id = ?", Long.class, "u7")));
+        return timings;
+    }
+
+    private static long median(Runnable query) {
+        query.run();
+        long[] samples = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            query.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[RUNS / 2];
+    }
+
+    /**
+     * 每 1000 笔交易中有一笔是 userId 为 null 的历史公共记录；每个用户的同步日志版本号从 1 连续递增
+     */
+    private void populate() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        Random random = new Random(7);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO transactions (id, amount, category_id, created_at, date, description, tags, type, " +
+                "updated_at, user_id) VALUES (?, ?, ?, ?, ?, ?, NULL, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                long date = START + (long) (random.nextDouble() * SPAN);
+                insert.setString(1, "t" + i);
+                insert.setDouble(2, 1 + random.nextInt(500));
+                insert.setString(3, CATEGORIES[i % CATEGORIES.length]);
+                insert.setLong(4, date);
+                insert.setLong(5, date);
+                insert.setString(6, "desc");
+                insert.setString(7, i % 5 == 0 ? "INCOME" : "EXPENSE");
+                insert.setLong(8, date);
+                insert.setString(9, i % 1000 == 0 ? null : "u" + (i % USERS));
+                insert.addBatch();
+                if (i % 10_000 == 9_999) insert.executeBatch();
+            }
+            insert.executeBatch();
+        }
+        List<Long> versions = new ArrayList<>(USERS);
+        for (int u = 0; u < USERS; u++) {
+            versions.add(0L);
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO sync_log_v2 (id, action, entity_id, entity_type, payload, timestamp, user_id, version) " +
+                "VALUES (?, 'UPDATE', ?, 'Transaction', NULL, ?, ?, ?)")) {
+            for (int i = 0; i < ROWS; i++) {
+                int user = random.nextInt(USERS);
+                long version = versions.get(user) + 1;
+                versions.set(user, version);
+                insert.setString(1, "s" + i);
+                insert.setString(2, "t" + random.nextInt(ROWS));
+                insert.setLong(3, START + i);
+                insert.setString(4, "u" + user);
+                insert.setLong(5, version);
+                insert.addBatch();
+                if (i % 10_000 == 9_999) insert.executeBatch();
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+        assertEquals(Long.valueOf(ROWS), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions", Long.class));
+    }
+}
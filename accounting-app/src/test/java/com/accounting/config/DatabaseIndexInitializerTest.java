@@ -0,0 +1,97 @@
+package com.accounting.config;
+
+import com.accounting.model.Budget;
+import com.accounting.model.SyncLog;
+import com.accounting.model.Transaction;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 旧库（没有任何索引、同步日志版本号有重复）启动时的清理与建唯一索引
+ */
+public class DatabaseIndexInitializerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = createSchema(folder.newFile("init.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (String index : jdbcTemplate.queryForList(
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL", String.class)) {
+            jdbcTemplate.execute("DROP INDEX " + index);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void renumbersDuplicateVersionsAfterEachUsersMaximum() {
+        log("a1", "u1", 1, 100);
+        log("a2", "u1", 2, 200);
+        log("a3", "u1", 2, 150);
+        log("a4", "u1", 2, 300);
+        log("a5", "u1", 3, 400);
+        log("b1", "u2", 1, 100);
+        log("b2", "u2", 1, 100);
+        log("c1", "u3", 5, 100);
+
+        new DatabaseIndexInitializer(jdbcTemplate).afterSingletonsInstantiated();
+
+        Map<String, Long> versions = new TreeMap<>();
+        for (Map<String, Object> row : jdbcTemplate.queryForList("SELECT id, version FROM sync_log_v2")) {
+            versions.put((String) row.get("id"), ((Number) row.get("version")).longValue());
+        }
+        // 每组中最早写入的一条保留原版本号，其余按写入顺序排到该用户最大版本号之后
+        assertEquals(Map.of("a1", 1L, "a3", 2L, "a2", 4L, "a4", 5L, "a5", 3L,
+            "b1", 1L, "b2", 2L, "c1", 5L), versions);
+        List<String> unique = jdbcTemplate.queryForList(
+            "SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'uk_sync_log_user_version'", String.class);
+        assertEquals(List.of("uk_sync_log_user_version"), unique);
+    }
+
+    private void log(String id, String userId, long version, long timestamp) {
+        jdbcTemplate.update("INSERT INTO sync_log_v2 (id, action, entity_id, entity_type, payload, timestamp, " +
+            "user_id, version) VALUES (?, 'ADD', ?, 'Transaction', NULL, ?, ?, ?)", id, "e" + id, timestamp, userId, version);
+    }
+
+    /**
+     * 由 Hibernate 按实体建表（含 @Index），返回指向同一数据库文件的数据源
+     */
+    static SingleConnectionDataSource createSchema(File db) {
+        String url = "jdbc:sqlite:" + db.getAbsolutePath();
+        SessionFactory sessionFactory = new Configuration()
+            .addAnnotatedClass(Transaction.class)
+            .addAnnotatedClass(SyncLog.class)
+            .addAnnotatedClass(Budget.class)
+            .setProperty("hibernate.connection.url", url)
+            .setProperty("hibernate.dialect", SQLiteDialect.class.getName())
+            .setPhysicalNamingStrategy(new CamelCaseToUnderscoresNamingStrategy())
+            .setProperty("hibernate.hbm2ddl.auto", "create")
+            .buildSessionFactory();
+        sessionFactory.close();
+        return new SingleConnectionDataSource(url, true);
+    }
+}
@@ -0,0 +1,109 @@
+package com.accounting.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 热点查询的执行计划必须走对应索引，不能全表扫描或为排序建临时 B 树。
+ * 新库由实体上的 @Index 建索引（SQLite 不支持 Hibernate 生成的唯一约束语句，唯一索引由
+ * DatabaseIndexInitializer 补建），旧库的索引全部由 DatabaseIndexInitializer 补建，两种情况都要检查
+ */
+public class DatabaseIndexQueryPlanTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = DatabaseIndexInitializerTest.createSchema(folder.newFile("plan.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.destroy();
+    }
+
+    @Test
+    public void newDatabaseServesHotQueriesFromIndexes() {
+        new DatabaseIndexInitializer(jdbcTemplate).afterSingletonsInstantiated();
+        assertPlans();
+    }
+
+    @Test
+    public void initializerRestoresIndexesOnExistingTables() {
+        // 模拟在加索引之前创建的旧数据库
+        List<String> indexes = jdbcTemplate.queryForList(
+            "SELECT name FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL", String.class);
+        assertFalse(indexes.isEmpty());
+        for (String index : indexes) {
+            jdbcTemplate.execute("DROP INDEX " + index);
+        }
+        assertTrue(plan("SELECT * FROM transactions WHERE user_id = ?").contains("SCAN transactions"));
+
+        new DatabaseIndexInitializer(jdbcTemplate).afterSingletonsInstantiated();
+        assertPlans();
+    }
+
+    private void assertPlans() {
+        // TransactionRepository.findVisibleForUser：两个以 user_id 开头的索引都可用
+        assertUses("SELECT * FROM transactions WHERE user_id IS NULL OR user_id = ?",
+            "idx_transactions_user_");
+        // TransactionRepository.sumAmount
+        assertUses("SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = ? AND type = ? " +
+            "AND date BETWEEN ? AND ?", "idx_transactions_user_date (user_id=? AND date>? AND date<?)");
+        // TransactionRepository.sumAmountByCategory
+        assertUses("SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE user_id = ? AND category_id = ? " +
+            "AND type = ? AND date BETWEEN ? AND ?",
+            "idx_transactions_user_category_date (user_id=? AND category_id=? AND date>? AND date<?)");
+        // TransactionRepository.findByDateRange
+        assertUses("SELECT * FROM transactions WHERE date BETWEEN ? AND ?", "idx_transactions_date_id (date>? AND date<?)");
+        // TransactionRepository.findByCategoryId
+        assertUses("SELECT * FROM transactions WHERE category_id = ?", "idx_transactions_category");
+        // TransactionQueryRepositoryImpl.findPage：从游标处定位 (date, id) 索引，按索引顺序读取，不另外排序
+        assertUses("SELECT * FROM transactions WHERE date >= ? AND (date > ? OR id > ?) ORDER BY date, id LIMIT ?",
+            "idx_transactions_date_id (date>?)");
+        // SyncLogRepository.findChanges
+        assertUses("SELECT * FROM sync_log_v2 WHERE user_id = ? AND version > ? AND version <= ? ORDER BY version",
+            "uk_sync_log_user_version (user_id=? AND version>? AND version<?)");
+        // SyncLogRepository.getMaxVersion
+        assertUses("SELECT COALESCE(MAX(version), 0) FROM sync_log_v2 WHERE user_id = ?",
+            "uk_sync_log_user_version");
+        // SyncLogRepository.deleteSupersededBefore：后台定期压缩，外层按时间扫描，每行的相关子查询必须走索引
+        assertSearches("SELECT * FROM sync_log_v2 s WHERE s.timestamp < ? AND EXISTS (SELECT 1 FROM sync_log_v2 n " +
+            "WHERE n.user_id = s.user_id AND n.entity_id = s.entity_id AND n.version > s.version)",
+            "idx_sync_log_user_entity_version (user_id=? AND entity_id=? AND version>?)");
+    }
+
+    private void assertUses(String sql, String index) {
+        String plan = assertSearches(sql, index);
+        assertFalse(sql + "\n" + plan, plan.contains("USE TEMP B-TREE"));
+        for (String line : plan.split("\n")) {
+            assertFalse(sql + "\n" + plan, line.matches("SCAN \\w+( \\w+)?"));
+        }
+    }
+
+    private String assertSearches(String sql, String index) {
+        String plan = plan(sql);
+        assertTrue(sql + "\n" + plan, plan.contains("INDEX " + index));
+        return plan;
+    }
+
+    private String plan(String sql) {
+        List<String> details = jdbcTemplate.query("EXPLAIN QUERY PLAN " + sql,
+            (rs, row) -> rs.getString("detail"));
+        return String.join("\n", details);
+    }
+}
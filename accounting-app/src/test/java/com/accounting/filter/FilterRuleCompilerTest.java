@@ -0,0 +1,171 @@
+package com.accounting.filter;
+
+import com.accounting.model.Transaction;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.community.dialect.SQLiteDialect;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 编译后的数据库查询与内存谓词必须选出相同的记录，包括各字段为 NULL 以及取反的情况
+ */
+public class FilterRuleCompilerTest {
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static SessionFactory sessionFactory;
+    private static final List<Transaction> ROWS = new ArrayList<>();
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        File db = folder.newFile("filter.db");
+        sessionFactory = new Configuration()
+            .addAnnotatedClass(Transaction.class)
+            .setProperty("hibernate.connection.url", "jdbc:sqlite:" + db.getAbsolutePath())
+            .setProperty("hibernate.dialect", SQLiteDialect.class.getName())
+            .setProperty("hibernate.hbm2ddl.auto", "create")
+            .buildSessionFactory();
+
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+        String[] categories = {"food", "rent", null};
+        String[] descriptions = {"Lunch at CAFE", "房租", "100%_off", null, "back\\slash"};
+        String[] tags = {null, "work,Travel", "旅行", "food"};
+        Transaction.TransactionType[] types = {Transaction.TransactionType.EXPENSE,
+            Transaction.TransactionType.INCOME, null};
+        for (int i = 0; i < 60; i++) {
+            Transaction t = new Transaction("u1", types[i % types.length], i * 2.5,
+                categories[i % categories.length], descriptions[i % descriptions.length]);
+            t.setId(String.format("t%02d", i));
+            t.setTags(tags[i % tags.length]);
+            t.setDate(i % 7 == 0 ? null : base.plusDays(i * 3L));
+            ROWS.add(t);
+        }
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (Transaction t : ROWS) {
+                session.persist(t);
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @Test
+    public void compiledLeavesMatchPredicates() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 10, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 3, 1, 0, 0);
+        assertSame(FilterRule.dateRange(from, to));
+        assertSame(FilterRule.dateRange(LocalDateTime.of(2024, 1, 4, 0, 0), LocalDateTime.of(2024, 1, 4, 0, 0)));
+        assertSame(FilterRule.byCategory("food"));
+        assertSame(FilterRule.byCategory(null));
+        assertSame(FilterRule.byType(Transaction.TransactionType.INCOME));
+        assertSame(FilterRule.byType(null));
+        assertSame(FilterRule.amountRange(10, 50));
+        assertSame(FilterRule.amountRange(25, 25));
+        assertSame(FilterRule.amountRange(Double.NEGATIVE_INFINITY, 30));
+        assertSame(FilterRule.amountRange(100, Double.POSITIVE_INFINITY));
+        assertSame(FilterRule.amountRange(Double.NaN, 30));
+        assertSame(FilterRule.amountRange(50, 10));
+        assertSame(FilterRule.byKeyword("cafe"));
+        assertSame(FilterRule.byKeyword("TRAVEL"));
+        assertSame(FilterRule.byKeyword("旅行"));
+        assertSame(FilterRule.byKeyword("%_"));
+        assertSame(FilterRule.byKeyword("_"));
+        assertSame(FilterRule.byKeyword("\\"));
+        assertSame(FilterRule.byKeyword("  "));
+    }
+
+    @Test
+    public void compiledCombinationsMatchPredicates() {
+        FilterRule food = FilterRule.byCategory("food");
+        FilterRule income = FilterRule.byType(Transaction.TransactionType.INCOME);
+        FilterRule cheap = FilterRule.amountRange(0, 40);
+        FilterRule recent = FilterRule.dateRange(LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 12, 31, 0, 0));
+        FilterRule keyword = FilterRule.byKeyword("off");
+        assertSame(food.and(cheap));
+        assertSame(food.or(income));
+        assertSame(food.negate());
+        assertSame(income.negate());
+        assertSame(recent.negate());
+        assertSame(keyword.negate());
+        assertSame(food.or(keyword).negate());
+        assertSame(food.and(recent.negate()).or(income.and(cheap)));
+        assertSame(recent.and(keyword.or(cheap.negate())).negate());
+    }
+
+    @Test
+    public void planPushesCompilablePartsAndKeepsCustomInMemory() {
+        FilterRule custom = FilterRule.of(t -> t.getId().endsWith("0") || t.getId().endsWith("5"), "自定义");
+        FilterRule rule = FilterRule.byCategory("food").and(custom).and(FilterRule.amountRange(0, 100));
+        assertFalse(FilterRuleCompiler.compile(rule).isPresent());
+        assertFalse(FilterRuleCompiler.compile(custom.negate()).isPresent());
+
+        FilterRuleCompiler.Plan plan = FilterRuleCompiler.plan(rule);
+        assertTrue(plan.hasResidual());
+        List<Transaction> rows = plan.applyResidual(query(plan.getSpecification()));
+        assertEquals(expected(rule), ids(rows));
+
+        FilterRuleCompiler.Plan pure = FilterRuleCompiler.plan(FilterRule.byCategory("rent").and(FilterRule.byKeyword("房")));
+        assertFalse(pure.hasResidual());
+    }
+
+    private static void assertSame(FilterRule rule) {
+        Optional<Specification<Transaction>> specification = FilterRuleCompiler.compile(rule);
+        assertTrue("应当可以编译: " + rule.getDescription(), specification.isPresent());
+        assertEquals(rule.getDescription(), expected(rule), ids(query(specification.get())));
+    }
+
+    private static TreeSet<String> expected(FilterRule rule) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (Transaction t : ROWS) {
+            if (rule.test(t)) ids.add(t.getId());
+        }
+        return ids;
+    }
+
+    private static List<Transaction> query(Specification<Transaction> specification) {
+        try (Session session = sessionFactory.openSession()) {
+            CriteriaBuilder cb = session.getCriteriaBuilder();
+            CriteriaQuery<Transaction> query = cb.createQuery(Transaction.class);
+            Root<Transaction> root = query.from(Transaction.class);
+            if (specification != null) {
+                query.where(specification.toPredicate(root, query, cb));
+            }
+            return session.createQuery(query).getResultList();
+        }
+    }
+
+    private static TreeSet<String> ids(List<Transaction> rows) {
+        TreeSet<String> ids = new TreeSet<>();
+        for (Transaction t : rows) {
+            ids.add(t.getId());
+        }
+        return ids;
+    }
+}
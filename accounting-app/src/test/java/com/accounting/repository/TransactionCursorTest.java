@@ -0,0 +1,79 @@
+package com.accounting.repository;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionCursorTest {
+
+    @Test
+    public void roundTripsDateAndId() {
+        assertRoundTrip(LocalDateTime.of(2024, 2, 29, 23, 59, 59, 123_456_789), "0f8fad5b-d9cb-469f-a165-70867728950e");
+        // 秒与纳秒为 0 时 toString 省略它们
+        assertRoundTrip(LocalDateTime.of(2024, 1, 1, 0, 0), "a");
+        assertRoundTrip(LocalDateTime.of(1, 1, 1, 0, 0, 1), "");
+    }
+
+    @Test
+    public void roundTripsNullDate() {
+        TransactionCursor decoded = TransactionCursor.decode(new TransactionCursor(null, "id-1").encode());
+        assertNull(decoded.getDate());
+        assertEquals("id-1", decoded.getId());
+    }
+
+    @Test
+    public void idMayContainSeparatorAndNonAscii() {
+        assertRoundTrip(LocalDateTime.of(2024, 5, 1, 8, 30), "a|b|~");
+        assertRoundTrip(null, "~|交易?&=/+");
+    }
+
+    @Test
+    public void encodedCursorIsUrlSafe() {
+        String encoded = new TransactionCursor(LocalDateTime.of(2024, 5, 1, 8, 30), "???>>>交易").encode();
+        assertTrue(encoded, encoded.matches("[A-Za-z0-9_-]+"));
+    }
+
+    @Test
+    public void afterUsesTransactionDateAndId() {
+        Transaction t = new Transaction();
+        t.setDate(LocalDateTime.of(2023, 12, 31, 18, 0));
+        TransactionCursor cursor = TransactionCursor.decode(TransactionCursor.after(t).encode());
+        assertEquals(t.getDate(), cursor.getDate());
+        assertEquals(t.getId(), cursor.getId());
+    }
+
+    @Test
+    public void rejectsMalformedCursors() {
+        assertInvalid("not base64!");
+        assertInvalid(encodeRaw("2024-01-01T00:00"));
+        assertInvalid(encodeRaw("yesterday|id"));
+        assertInvalid(encodeRaw("2024-13-01T00:00|id"));
+    }
+
+    private static void assertRoundTrip(LocalDateTime date, String id) {
+        TransactionCursor decoded = TransactionCursor.decode(new TransactionCursor(date, id).encode());
+        assertEquals(date, decoded.getDate());
+        assertEquals(id, decoded.getId());
+    }
+
+    private static void assertInvalid(String cursor) {
+        try {
+            TransactionCursor.decode(cursor);
+            fail("应当拒绝游标: " + cursor);
+        } catch (IllegalArgumentException expected) {
+            // 预期失败
+        }
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
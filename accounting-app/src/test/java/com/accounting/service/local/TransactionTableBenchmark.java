@@ -0,0 +1,102 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 内存交易表基准
+ * 在 1 万、10 万、100 万行上各执行固定次数的按 ID 查询、原位更新、删除后追加（触发墓碑压实），
+ * 每次操作的耗时应基本不随行数增长（线性扫描时会增长 100 倍）。
+ * 计时结果受机器负载影响，不参与默认的 mvn test，用 mvn test -Pbenchmark 运行；正确性由 TransactionTableTest 覆盖
+ */
+public class TransactionTableBenchmark {
+    private static final int[] SIZES = {10_000, 100_000, 1_000_000};
+    private static final int OPS = 200_000;
+    private static final int ROUNDS = 3;
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Test
+    public void perOperationCostStaysFlatAsTableGrows() {
+        // 预热
+        measure(SIZES[0]);
+        measure(SIZES[0]);
+        double[] nanosPerOp = new double[SIZES.length];
+        for (int i = 0; i < SIZES.length; i++) {
+            nanosPerOp[i] = measure(SIZES[i]);
+        }
+        for (int i = 0; i < SIZES.length; i++) {
+            System.out.printf("交易表 %,d 行: %.1f ns/操作%n", SIZES[i], nanosPerOp[i]);
+        }
+        // 大表的缓存未命中会变慢几倍，但远小于线性扫描的 100 倍
+        assertTrue("100 万行 " + nanosPerOp[2] + " ns/操作，1 万行 " + nanosPerOp[0] + " ns/操作",
+                nanosPerOp[2] < nanosPerOp[0] * 25);
+    }
+
+    /**
+     * 返回多轮中最快一轮的平均每次操作耗时
+     */
+    private static double measure(int size) {
+        List<Transaction> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(transaction("t" + i));
+        }
+        TransactionTable table = new TransactionTable(rows);
+        Random random = new Random(size);
+        int nextId = size;
+        long best = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                int k = random.nextInt(nextId);
+                switch (i % 4) {
+                    case 0:
+                    case 1: {
+                        Transaction t = table.get("t" + k);
+                        if (t != null) checksum += t.getId().length();
+                        break;
+                    }
+                    case 2: {
+                        Transaction t = table.get("t" + k);
+                        if (t != null) table.put(transaction(t.getId()));
+                        break;
+                    }
+                    default: {
+                        // 删除后追加新记录，行数不变，墓碑累积到阈值时压实
+                        if (table.remove("t" + k) != null) {
+                            table.put(transaction("t" + nextId++));
+                        }
+                        break;
+                    }
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue(checksum > 0);
+        assertEquals(size, table.size());
+        int seen = 0;
+        for (Transaction t : table) {
+            assertNotNull(t);
+            seen++;
+        }
+        assertEquals(size, seen);
+        return (double) best / OPS;
+    }
+
+    private static Transaction transaction(String id) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        t.setCreatedAt(TIME);
+        t.setUpdatedAt(TIME);
+        return t;
+    }
+}
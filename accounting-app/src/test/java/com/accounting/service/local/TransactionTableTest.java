@@ -0,0 +1,193 @@
+package com.accounting.service.local;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 内存交易表与 LinkedHashMap 语义一致：遍历按插入顺序，原位替换保留位置，删除后再插入排到末尾
+ */
+public class TransactionTableTest {
+
+    @Test
+    public void iteratesInInsertionOrderAndReplacesInPlace() {
+        TransactionTable table = new TransactionTable();
+        Transaction a = transaction("a");
+        Transaction b = transaction("b");
+        Transaction c = transaction("c");
+        assertNull(table.put(a));
+        assertNull(table.put(b));
+        assertNull(table.put(c));
+
+        Transaction b2 = transaction("b");
+        assertSame(b, table.put(b2));
+        assertEquals(3, table.size());
+        assertEquals(List.of(a, b2, c), table.values());
+        assertSame(b2, table.get("b"));
+    }
+
+    @Test
+    public void constructorKeepsFirstPositionAndLastValueForDuplicateIds() {
+        Transaction a = transaction("a");
+        Transaction b = transaction("b");
+        Transaction a2 = transaction("a");
+        TransactionTable table = new TransactionTable(List.of(a, b, a2));
+        assertEquals(List.of(a2, b), table.values());
+    }
+
+    @Test
+    public void reputAfterRemoveAppendsAtTheEnd() {
+        TransactionTable table = table("a", "b", "c");
+        Transaction b = table.remove("b");
+        assertEquals("b", b.getId());
+        assertNull(table.remove("b"));
+        assertFalse(table.contains("b"));
+        assertNull(table.get("b"));
+        assertEquals(List.of("a", "c"), ids(table));
+
+        Transaction b2 = transaction("b");
+        assertNull(table.put(b2));
+        assertEquals(List.of("a", "c", "b"), ids(table));
+        assertSame(b2, table.get("b"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void compactionKeepsOrderAndIndex() {
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            all.add("t" + i);
+        }
+        TransactionTable table = table(all.toArray(new String[0]));
+        // 删除 3/4 的记录，墓碑多于存活记录，期间多次压实
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < all.size(); i++) {
+            if (i % 4 == 3) {
+                expected.add(all.get(i));
+            } else {
+                assertEquals(all.get(i), table.remove(all.get(i)).getId());
+            }
+        }
+        assertEquals(expected, ids(table));
+        for (String id : expected) {
+            assertEquals(id, table.get(id).getId());
+        }
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i % 4 == 3, table.contains(all.get(i)));
+        }
+
+        // 压实后继续追加与原位替换，索引仍指向正确的槽位
+        for (int i = 0; i < 500; i++) {
+            table.put(transaction("n" + i));
+            expected.add("n" + i);
+        }
+        Transaction replaced = transaction("t3");
+        assertEquals("t3", table.put(replaced).getId());
+        assertSame(replaced, table.get("t3"));
+        assertEquals(expected, ids(table));
+        assertEquals(expected.size(), table.size());
+    }
+
+    @Test
+    public void removingEveryRowResetsTheTable() {
+        TransactionTable table = table("a", "b", "c");
+        table.remove("c");
+        table.remove("a");
+        table.remove("b");
+        assertEquals(0, table.size());
+        assertFalse(table.iterator().hasNext());
+
+        table.put(transaction("d"));
+        table.put(transaction("a"));
+        assertEquals(List.of("d", "a"), ids(table));
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        TransactionTable table = table("a", "b");
+        table.clear();
+        assertEquals(0, table.size());
+        assertNull(table.get("a"));
+        assertEquals(List.of(), ids(table));
+        table.put(transaction("b"));
+        assertEquals(List.of("b"), ids(table));
+    }
+
+    @Test
+    public void iteratorSkipsTombstonesAndThrowsWhenExhausted() {
+        TransactionTable table = table("a", "b", "c", "d");
+        table.remove("a");
+        table.remove("c");
+        table.remove("d");
+        Iterator<Transaction> it = table.iterator();
+        assertTrue(it.hasNext());
+        assertEquals("b", it.next().getId());
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail("遍历结束后应抛出 NoSuchElementException");
+        } catch (NoSuchElementException expected) {
+            // 预期异常
+        }
+    }
+
+    @Test
+    public void randomOperationsMatchLinkedHashMap() {
+        Random random = new Random(7);
+        TransactionTable table = new TransactionTable();
+        Map<String, Transaction> model = new LinkedHashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            String id = "t" + random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertSame(id, model.remove(id), table.remove(id));
+            } else {
+                Transaction t = transaction(id);
+                assertSame(id, model.put(id, t), table.put(t));
+            }
+            if (i % 10_000 == 0) {
+                assertEquals(new ArrayList<>(model.values()), table.values());
+            }
+        }
+        assertEquals(model.size(), table.size());
+        assertEquals(new ArrayList<>(model.values()), table.values());
+        for (Map.Entry<String, Transaction> entry : model.entrySet()) {
+            assertSame(entry.getValue(), table.get(entry.getKey()));
+        }
+    }
+
+    private static TransactionTable table(String... ids) {
+        TransactionTable table = new TransactionTable();
+        for (String id : ids) {
+            table.put(transaction(id));
+        }
+        return table;
+    }
+
+    private static List<String> ids(TransactionTable table) {
+        List<String> ids = new ArrayList<>();
+        for (Transaction t : table) {
+            ids.add(t.getId());
+        }
+        return ids;
+    }
+
+    private static Transaction transaction(String id) {
+        Transaction t = new Transaction();
+        t.setId(id);
+        return t;
+    }
+}
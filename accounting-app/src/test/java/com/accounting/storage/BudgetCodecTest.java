@@ -0,0 +1,58 @@
+package com.accounting.storage;
+
+import com.accounting.model.Budget;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BudgetCodecTest {
+    private static final BudgetCodec CODEC = new BudgetCodec();
+
+    @Test
+    public void roundTripsMonthlyAndPeriodBudgets() {
+        Budget monthly = new Budget("user-1", null, 3000, 2024, 12);
+        Budget category = new Budget("user-1", "food", 800.5, 1, 1);
+
+        Budget period = new Budget("user-2", "travel", 1.0 / 3, -5, 0);
+        period.setStartDate(LocalDate.of(1969, 12, 31));
+        period.setPeriodUnit(Budget.PeriodUnit.WEEKS);
+        period.setPeriodCount(Integer.MAX_VALUE);
+        period.setCreatedAt(null);
+        period.setUpdatedAt(LocalDateTime.of(2024, 3, 1, 9, 0, 0, 1_000_000));
+
+        Budget negativeCount = new Budget(null, null, 0, Integer.MAX_VALUE, Integer.MIN_VALUE);
+        negativeCount.setPeriodUnit(Budget.PeriodUnit.DAYS);
+        negativeCount.setPeriodCount(Integer.MIN_VALUE);
+
+        List<Budget> records = List.of(monthly, category, period, negativeCount);
+        List<Budget> decoded = CompactFormat.decode(CompactFormat.encode(records, CODEC), CODEC);
+        assertEquals(records.size(), decoded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertSameFields(records.get(i), decoded.get(i));
+        }
+    }
+
+    private static void assertSameFields(Budget expected, Budget actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getCategoryId(), actual.getCategoryId());
+        assertEquals(Double.doubleToLongBits(expected.getAmount()), Double.doubleToLongBits(actual.getAmount()));
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getMonth(), actual.getMonth());
+        assertEquals(millis(expected.getCreatedAt()), actual.getCreatedAt());
+        assertEquals(millis(expected.getUpdatedAt()), actual.getUpdatedAt());
+        assertEquals(expected.getStartDate(), actual.getStartDate());
+        assertEquals(expected.getPeriodUnit(), actual.getPeriodUnit());
+        assertEquals(expected.getPeriodCount(), actual.getPeriodCount());
+    }
+
+    // 时间精确到毫秒
+    private static LocalDateTime millis(LocalDateTime value) {
+        return value == null ? null : value.truncatedTo(ChronoUnit.MILLIS);
+    }
+}
@@ -0,0 +1,275 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+import com.accounting.service.local.LocalTransactionService;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarSegmentTest {
+    private static final String PREFIX = "transactions";
+    private static final LocalDate START = LocalDate.of(2023, 11, 1);
+    private static final String[] USERS = {"u1", "u2", null};
+    private static final String[] CATEGORIES = {"food", null, "rent", "u1"};
+    // 这些 ID 的 hashCode 相同
+    private static final String[] COLLIDING = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEveryRowById() throws IOException {
+        List<Transaction> rows = sample(1500);
+        ColumnarSegment segment = write(null, new BitSet(), rows);
+        assertEquals(rows.size(), segment.size());
+        assertEquals(YearMonth.of(2024, 2), segment.getSealedThrough());
+        for (Transaction expected : rows) {
+            int row = segment.find(expected.getId());
+            assertTrue(expected.getId(), row >= 0);
+            assertEquals(expected.getId(), segment.id(row));
+            assertSameFields(expected, segment.read(row));
+            assertEquals(expected.getDate().toLocalDate().toEpochDay(), segment.epochDay(row));
+            assertEquals(Math.round(expected.getAmount() * 100), segment.cents(row));
+        }
+        assertEquals(-1, segment.find("missing"));
+        assertEquals(-1, segment.find("Ab"));
+        assertEquals(-1, segment.find(null));
+    }
+
+    @Test
+    public void scansByUserDateRangeAndSkipsRows() throws IOException {
+        List<Transaction> rows = sample(900);
+        ColumnarSegment segment = write(null, new BitSet(), rows);
+        BitSet skip = new BitSet();
+        for (int i = 0; i < rows.size(); i += 7) {
+            skip.set(segment.find(rows.get(i).getId()));
+        }
+        LocalDate from = LocalDate.of(2023, 12, 15);
+        LocalDate to = LocalDate.of(2024, 1, 20);
+
+        assertScan(segment, rows, "u1", from, to, skip);
+        assertScan(segment, rows, "u2", null, to, new BitSet());
+        assertScan(segment, rows, null, from, null, skip);
+        assertScan(segment, rows, null, null, null, new BitSet());
+        // 分类字典中的 "u1" 不应被当作用户
+        assertScan(segment, rows, "rent", null, null, new BitSet());
+        assertScan(segment, rows, "nobody", null, null, new BitSet());
+        assertEquals(-1, segment.userCode("nobody"));
+        assertEquals(0, segment.userCode(null));
+    }
+
+    @Test
+    public void rewriteDropsRowsAndKeepsTheRest() throws IOException {
+        List<Transaction> rows = sample(300);
+        ColumnarSegment first = write(null, new BitSet(), rows);
+        BitSet drop = new BitSet();
+        Set<String> dropped = new TreeSet<>();
+        for (int i = 0; i < rows.size(); i += 3) {
+            drop.set(first.find(rows.get(i).getId()));
+            dropped.add(rows.get(i).getId());
+        }
+        Transaction added = transaction("added", "u3", "new-category", Transaction.TransactionType.INCOME,
+            7.77, LocalDate.of(2024, 3, 31));
+        ColumnarSegment second = write(first, drop, List.of(added));
+
+        assertEquals(rows.size() - dropped.size() + 1, second.size());
+        assertEquals(YearMonth.of(2024, 2), second.getSealedThrough());
+        for (Transaction expected : rows) {
+            int row = second.find(expected.getId());
+            if (dropped.contains(expected.getId())) {
+                assertEquals(-1, row);
+            } else {
+                assertSameFields(expected, second.read(row));
+            }
+        }
+        assertSameFields(added, second.read(second.find("added")));
+        assertScan(second, List.of(added), "u3", null, null, new BitSet());
+    }
+
+    @Test
+    public void emptySegmentFindsNothing() throws IOException {
+        ColumnarSegment.write(dir(), PREFIX, null, new BitSet(), new ArrayList<>(), null);
+        ColumnarSegment segment = ColumnarSegment.openLatest(dir(), PREFIX);
+        assertEquals(0, segment.size());
+        assertNull(segment.getSealedThrough());
+        assertEquals(-1, segment.find("Aa"));
+        segment.scan(null, null, null, new BitSet(), (row, day, type, category, cents) -> {
+            throw new AssertionError("空段不应有行");
+        });
+    }
+
+    @Test
+    public void deletedIdsPersistPerGeneration() throws IOException {
+        List<Transaction> rows = sample(50);
+        ColumnarSegment segment = write(null, new BitSet(), rows);
+        assertTrue(segment.readDeleted().isEmpty());
+
+        segment.appendDeleted(List.of("Aa", rows.get(10).getId()), true);
+        segment.appendDeleted(List.of(), true);
+        segment.appendDeleted(List.of("BB"), false);
+        Path deleted = only("*.deleted");
+        // 崩溃留下的半行只是一个不存在的 ID
+        Files.writeString(deleted, "trunc", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ColumnarSegment reopened = ColumnarSegment.openLatest(dir(), PREFIX);
+        assertEquals(Set.of("Aa", "BB", rows.get(10).getId(), "trunc"), reopened.readDeleted());
+        assertEquals(-1, reopened.find("trunc"));
+
+        // 新代次不继承旧代次的删除记录，旧代次的文件在下次打开时清理
+        BitSet drop = new BitSet();
+        for (String id : reopened.readDeleted()) {
+            int row = reopened.find(id);
+            if (row >= 0) drop.set(row);
+        }
+        write(reopened, drop, new ArrayList<>());
+        ColumnarSegment latest = ColumnarSegment.openLatest(dir(), PREFIX);
+        assertTrue(latest.readDeleted().isEmpty());
+        assertEquals(rows.size() - 3, latest.size());
+        assertEquals(-1, latest.find("Aa"));
+        assertFalse(Files.exists(deleted));
+        assertEquals(1, count("*.seg"));
+    }
+
+    @Test
+    public void deletedAndClearedSealedRowsStayGoneAfterReopen() {
+        StorageManager storage = new StorageManager(dir());
+        LocalTransactionService service = new LocalTransactionService(storage);
+        List<Transaction> rows = new ArrayList<>();
+        LocalDate past = YearMonth.now().minusMonths(2).atDay(1);
+        for (int i = 0; i < 1200; i++) {
+            rows.add(transaction("sealed-" + i, "u1", "food", Transaction.TransactionType.EXPENSE, i, past.plusDays(i % 28)));
+        }
+        service.addTransactions(rows);
+        service.close();
+
+        // 重新打开时封存历史月份
+        service = new LocalTransactionService(storage);
+        assertEquals(1, count("*.seg"));
+        assertEquals(1200, service.getTransactionCount());
+        assertTrue(service.deleteTransaction("sealed-5"));
+        assertFalse(service.deleteTransaction("sealed-5"));
+        service.close();
+
+        service = new LocalTransactionService(storage);
+        assertEquals(1199, service.getTransactionCount());
+        assertNull(service.getTransactionById("sealed-5"));
+        assertEquals("sealed-6", service.getTransactionById("sealed-6").getId());
+        service.clearAllTransactions();
+        service.close();
+
+        service = new LocalTransactionService(storage);
+        assertEquals(0, service.getTransactionCount());
+        assertNull(service.getTransactionById("sealed-6"));
+        service.close();
+    }
+
+    private void assertScan(ColumnarSegment segment, List<Transaction> rows, String userId,
+                            LocalDate from, LocalDate to, BitSet skip) {
+        Map<Integer, Transaction> expected = new HashMap<>();
+        for (Transaction t : rows) {
+            int row = segment.find(t.getId());
+            LocalDate day = t.getDate().toLocalDate();
+            if (skip.get(row)) continue;
+            if (userId != null && !userId.equals(t.getUserId())) continue;
+            if (from != null && day.isBefore(from)) continue;
+            if (to != null && day.isAfter(to)) continue;
+            expected.put(row, t);
+        }
+        Map<Integer, Transaction> seen = new HashMap<>();
+        segment.scan(userId, from, to, skip, (row, day, type, category, cents) -> {
+            Transaction t = expected.get(row);
+            assertTrue("不应扫描到第 " + row + " 行", t != null);
+            assertEquals(t.getDate().toLocalDate().toEpochDay(), day);
+            assertEquals(t.getType(), type);
+            assertEquals(t.getCategoryId(), category);
+            assertEquals(Math.round(t.getAmount() * 100), cents);
+            assertNull("重复扫描第 " + row + " 行", seen.put(row, t));
+        });
+        assertEquals(expected.keySet(), seen.keySet());
+    }
+
+    private ColumnarSegment write(ColumnarSegment base, BitSet drop, List<Transaction> added) throws IOException {
+        Path written = ColumnarSegment.write(dir(), PREFIX, base, drop, added, YearMonth.of(2024, 2));
+        ColumnarSegment segment = ColumnarSegment.openLatest(dir(), PREFIX);
+        assertEquals(written.getFileName().toString(), only("*.seg").getFileName().toString());
+        return segment;
+    }
+
+    private static List<Transaction> sample(int count) {
+        Transaction.TransactionType[] types = {Transaction.TransactionType.EXPENSE,
+            Transaction.TransactionType.INCOME, null};
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String id = i < COLLIDING.length ? COLLIDING[i] : "tx-" + i;
+            rows.add(transaction(id, USERS[i % USERS.length], CATEGORIES[i % CATEGORIES.length],
+                types[i % types.length], i % 11 == 0 ? 0.1 + 0.2 : i * 1.5, START.plusDays(i % 120)));
+        }
+        return rows;
+    }
+
+    private static Transaction transaction(String id, String userId, String categoryId,
+                                           Transaction.TransactionType type, double amount, LocalDate day) {
+        Transaction t = new Transaction(userId, type, amount, categoryId, "desc " + id);
+        t.setId(id);
+        t.setDate(LocalDateTime.of(day, LocalTime.of(10, 30)));
+        t.setCreatedAt(LocalDateTime.of(2024, 1, 1, 0, 0));
+        t.setUpdatedAt(LocalDateTime.of(2024, 1, 2, 0, 0));
+        return t;
+    }
+
+    private static void assertSameFields(Transaction expected, Transaction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getAmount(), actual.getAmount(), 0);
+        assertEquals(expected.getCategoryId(), actual.getCategoryId());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getDate(), actual.getDate());
+    }
+
+    private Path dir() {
+        return folder.getRoot().toPath();
+    }
+
+    private Path only(String glob) throws IOException {
+        List<Path> matches = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir(), glob)) {
+            files.forEach(matches::add);
+        }
+        assertEquals(matches.toString(), 1, matches.size());
+        return matches.get(0);
+    }
+
+    private int count(String glob) {
+        int n = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir(), glob)) {
+            for (Path ignored : files) n++;
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return n;
+    }
+}
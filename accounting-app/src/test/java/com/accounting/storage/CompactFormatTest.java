@@ -0,0 +1,191 @@
+package com.accounting.storage;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactFormatTest {
+
+    @Test
+    public void varLongRoundTripsAtByteBoundaries() {
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, (1L << 35) - 1, 1L << 35, (1L << 56) - 1,
+            1L << 56, (1L << 63) - 1, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (long value : values) {
+            CompactFormat.Input in = input(out -> out.writeVarLong(value));
+            assertEquals(value, in.readVarLong());
+            assertFalse(in.hasRemaining());
+        }
+        assertEquals(1, encode(out -> out.writeVarLong(127)).length);
+        assertEquals(2, encode(out -> out.writeVarLong(128)).length);
+        assertEquals(3, encode(out -> out.writeVarLong(16_384)).length);
+        assertEquals(9, encode(out -> out.writeVarLong(Long.MAX_VALUE)).length);
+        // 负数按无符号处理，占满 10 字节
+        assertEquals(10, encode(out -> out.writeVarLong(-1)).length);
+    }
+
+    @Test
+    public void zigzagKeepsSmallNegativesShort() {
+        long[] values = {0, 1, -1, 63, -64, 64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1};
+        for (long value : values) {
+            assertEquals(value, input(out -> out.writeSigned(value)).readSigned());
+        }
+        assertArrayEquals(new byte[]{0}, encode(out -> out.writeSigned(0)));
+        assertArrayEquals(new byte[]{1}, encode(out -> out.writeSigned(-1)));
+        assertArrayEquals(new byte[]{2}, encode(out -> out.writeSigned(1)));
+        assertEquals(1, encode(out -> out.writeSigned(-64)).length);
+        assertEquals(2, encode(out -> out.writeSigned(64)).length);
+        assertEquals(10, encode(out -> out.writeSigned(Long.MIN_VALUE)).length);
+    }
+
+    @Test
+    public void nullableSignedReservesZeroForNull() {
+        assertArrayEquals(new byte[]{0}, encode(out -> out.writeNullableSigned(null)));
+        assertNull(input(out -> out.writeNullableSigned(null)).readNullableSigned());
+        Long[] values = {0L, 1L, -1L, 1000L, -1000L, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (Long value : values) {
+            assertEquals(value, input(out -> out.writeNullableSigned(value)).readNullableSigned());
+        }
+        try {
+            encode(out -> out.writeNullableSigned(Long.MIN_VALUE));
+            fail("Long.MIN_VALUE 会被读成 null");
+        } catch (IllegalArgumentException expected) {
+            // 预期失败
+        }
+    }
+
+    @Test
+    public void amountsRoundTripExactly() {
+        double[] values = {0, 0.01, -0.01, 12.34, -12.34, 99_999.99, 1e13, -1e13, 1e14, 0.1 + 0.2, 1.0 / 3,
+            1e-9, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            assertEquals(Double.doubleToLongBits(value),
+                Double.doubleToLongBits(input(out -> out.writeAmount(value)).readAmount()));
+        }
+        assertTrue(Double.isNaN(input(out -> out.writeAmount(Double.NaN)).readAmount()));
+        // 负零按分存储，读回为 0.0
+        assertEquals(0.0, input(out -> out.writeAmount(-0.0)).readAmount(), 0);
+        // 能用分表示的金额只占少量字节，其余写 1 字节标记 + 8 字节 double
+        assertEquals(2, encode(out -> out.writeAmount(12.34)).length);
+        assertEquals(9, encode(out -> out.writeAmount(0.1 + 0.2)).length);
+    }
+
+    @Test
+    public void stringsDistinguishNullFromEmpty() {
+        char[] longText = new char[200];
+        Arrays.fill(longText, '长');
+        String[] values = {null, "", "a", "中文", "emoji 😀", "with\u0000nul", new String(longText)};
+        for (String value : values) {
+            assertEquals(value, input(out -> out.writeString(value)).readString());
+        }
+        assertArrayEquals(new byte[]{0}, encode(out -> out.writeString(null)));
+        assertArrayEquals(new byte[]{1}, encode(out -> out.writeString("")));
+    }
+
+    @Test
+    public void dateTimesKeepMillisecondsOnBothSidesOfEpoch() {
+        LocalDateTime[] values = {null, LocalDateTime.of(1970, 1, 1, 0, 0),
+            LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000), LocalDateTime.of(1900, 1, 1, 0, 0, 0, 1_000_000),
+            LocalDateTime.of(2024, 2, 29, 12, 0, 0, 123_000_000), LocalDateTime.of(9999, 12, 31, 23, 59, 59, 999_000_000),
+            LocalDateTime.of(-9999, 1, 1, 0, 0)};
+        for (LocalDateTime value : values) {
+            assertEquals(value, input(out -> out.writeDateTime(value)).readDateTime());
+        }
+        // 毫秒以下截断
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0, 0, 123_000_000),
+            input(out -> out.writeDateTime(LocalDateTime.of(2024, 1, 1, 0, 0, 0, 123_456_789))).readDateTime());
+
+        LocalDate[] dates = {null, LocalDate.EPOCH, LocalDate.of(1969, 12, 31), LocalDate.MIN, LocalDate.MAX};
+        for (LocalDate value : dates) {
+            assertEquals(value, input(out -> out.writeDate(value)).readDate());
+        }
+    }
+
+    @Test
+    public void refsShareOneDictionaryAcrossRecords() {
+        RecordCodec<String[]> codec = new RecordCodec<String[]>() {
+            @Override
+            public void write(String[] record, CompactFormat.Output out) {
+                out.writeRef(record[0]);
+                out.writeString(record[1]);
+            }
+
+            @Override
+            public String[] read(CompactFormat.Input in) {
+                return new String[]{in.readRef(), in.readString()};
+            }
+        };
+        List<String[]> records = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            records.add(new String[]{i % 3 == 0 ? null : "user-" + (i % 2), "row " + i});
+        }
+        byte[] data = CompactFormat.encode(records, codec);
+        assertTrue(CompactFormat.isCompact(data));
+        List<String[]> decoded = CompactFormat.decode(data, codec);
+        assertEquals(records.size(), decoded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(records.get(i), decoded.get(i));
+        }
+        assertTrue(CompactFormat.decode(CompactFormat.encode(new ArrayList<>(), codec), codec).isEmpty());
+    }
+
+    @Test
+    public void dictionaryRoundTripsInIdOrder() {
+        Map<String, Integer> dictionary = new HashMap<>();
+        dictionary.put("b", 1);
+        dictionary.put("a", 0);
+        dictionary.put("", 2);
+        assertArrayEquals(new String[]{"a", "b", ""},
+            CompactFormat.decodeDictionary(CompactFormat.encodeDictionary(dictionary)));
+    }
+
+    @Test
+    public void rejectsForeignAndTruncatedData() {
+        assertFalse(CompactFormat.isCompact(new byte[]{'A', 'C', 'F'}));
+        assertFalse(CompactFormat.isCompact("[{\"id\":1}]".getBytes()));
+        assertInvalid(() -> CompactFormat.decode("[]".getBytes(), new TransactionCodec()));
+        assertInvalid(() -> CompactFormat.decode(new byte[]{'A', 'C', 'F', 9, 0, 0}, new TransactionCodec()));
+
+        byte[] varLong = encode(out -> out.writeVarLong(Long.MAX_VALUE));
+        assertInvalid(() -> new CompactFormat.Input(varLong, 0, varLong.length - 1, null).readVarLong());
+        byte[] string = encode(out -> out.writeString("truncated"));
+        assertInvalid(() -> new CompactFormat.Input(string, 0, string.length - 1, null).readString());
+        byte[] amount = encode(out -> out.writeAmount(1.0 / 3));
+        assertInvalid(() -> new CompactFormat.Input(amount, 0, amount.length - 1, null).readAmount());
+    }
+
+    private static byte[] encode(Consumer<CompactFormat.Output> writer) {
+        CompactFormat.Output out = new CompactFormat.Output(new HashMap<>(), 4);
+        writer.accept(out);
+        return Arrays.copyOf(out.buffer(), out.size());
+    }
+
+    private static CompactFormat.Input input(Consumer<CompactFormat.Output> writer) {
+        byte[] data = encode(writer);
+        return new CompactFormat.Input(data, 0, data.length, null);
+    }
+
+    private static void assertInvalid(Runnable action) {
+        try {
+            action.run();
+            fail("应当拒绝无效数据");
+        } catch (IllegalArgumentException expected) {
+            // 预期失败
+        }
+    }
+}
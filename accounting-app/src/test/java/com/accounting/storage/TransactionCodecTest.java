@@ -0,0 +1,57 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransactionCodecTest {
+    private static final TransactionCodec CODEC = new TransactionCodec();
+
+    @Test
+    public void roundTripsAllFields() {
+        Transaction full = new Transaction("user-1", Transaction.TransactionType.INCOME, 1234.56, "salary", "月薪, \"奖金\"");
+        full.setDate(LocalDateTime.of(2024, 6, 30, 18, 45, 12, 345_000_000));
+        full.setCreatedAt(LocalDateTime.of(1969, 7, 20, 20, 17, 40));
+        full.setUpdatedAt(LocalDateTime.of(2038, 1, 19, 3, 14, 8));
+        full.setTags("work,bonus");
+
+        Transaction empty = new Transaction();
+        empty.setId("");
+        empty.setAmount(-0.1 - 0.2);
+        empty.setCreatedAt(null);
+        empty.setUpdatedAt(null);
+
+        Transaction sameUser = new Transaction("user-1", Transaction.TransactionType.EXPENSE, 0.01, "salary", null);
+        sameUser.setDate(LocalDateTime.of(2024, 1, 1, 0, 0));
+
+        List<Transaction> records = List.of(full, empty, sameUser);
+        List<Transaction> decoded = CompactFormat.decode(CompactFormat.encode(records, CODEC), CODEC);
+        assertEquals(records.size(), decoded.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertSameFields(records.get(i), decoded.get(i));
+        }
+    }
+
+    private static void assertSameFields(Transaction expected, Transaction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getUserId(), actual.getUserId());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(Double.doubleToLongBits(expected.getAmount()), Double.doubleToLongBits(actual.getAmount()));
+        assertEquals(expected.getCategoryId(), actual.getCategoryId());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(millis(expected.getDate()), actual.getDate());
+        assertEquals(millis(expected.getCreatedAt()), actual.getCreatedAt());
+        assertEquals(millis(expected.getUpdatedAt()), actual.getUpdatedAt());
+        assertEquals(expected.getTags(), actual.getTags());
+    }
+
+    // 时间精确到毫秒
+    private static LocalDateTime millis(LocalDateTime value) {
+        return value == null ? null : value.truncatedTo(ChronoUnit.MILLIS);
+    }
+}
@@ -0,0 +1,239 @@
+package com.accounting.storage;
+
+import com.accounting.model.Transaction;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransactionJournalTest {
+    private static final String FILE = "transactions.json";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = gson();
+    private final Map<String, Transaction> state = new LinkedHashMap<>();
+    private StorageManager storage;
+    private TransactionJournal journal;
+
+    @Before
+    public void setUp() {
+        storage = new StorageManager(folder.getRoot().toPath());
+    }
+
+    @After
+    public void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void replaysPutsDeletesAndClears() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        assertTrue(journal.load().isEmpty());
+        Transaction a = transaction("a", 10);
+        Transaction b = transaction("b", 20);
+        Transaction c = transaction("c", 30);
+        journal.appendPutAll(List.of(a, b));
+        journal.appendDelete("a");
+        journal.appendClear();
+        journal.appendPut(c);
+        b.setAmount(25);
+        journal.appendPut(b);
+        journal.appendDelete("missing");
+        journal.close();
+
+        List<Transaction> loaded = reopen(Long.MAX_VALUE).load();
+        assertEquals(List.of("c", "b"), ids(loaded));
+        assertEquals(25, loaded.get(1).getAmount(), 0);
+        assertEquals(b.getDate(), loaded.get(1).getDate());
+    }
+
+    @Test
+    public void ignoresTornLastLine() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        journal.load();
+        journal.appendPut(transaction("a", 10));
+        journal.appendPut(transaction("b", 20));
+        journal.close();
+        // 模拟写到一半时崩溃
+        Files.writeString(path(FILE + ".journal"), "{\"op\":\"PUT\",\"id\":\"c\",\"tx\":{\"id\":\"c\",\"amou",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = reopen(Long.MAX_VALUE);
+        assertEquals(List.of("a", "b"), ids(journal.load()));
+        assertFalse(journal.isStale());
+    }
+
+    @Test
+    public void appendsAfterTornTailSurviveReload() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        journal.load();
+        journal.appendPut(transaction("a", 10));
+        journal.close();
+        Files.writeString(path(FILE + ".journal"), "{\"op\":\"PUT\",\"id\":\"x\",\"tx\":{\"id\":\"x\",\"amou",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = reopen(Long.MAX_VALUE);
+        assertEquals(List.of("a"), ids(journal.load()));
+        journal.appendPut(transaction("b", 20));
+        journal.appendPut(transaction("c", 30));
+        journal.appendDelete("a");
+
+        assertEquals(List.of("b", "c"), ids(reopen(Long.MAX_VALUE).load()));
+    }
+
+    @Test
+    public void appendWithoutLoadDoesNotJoinTornTail() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        journal.appendPut(transaction("a", 10));
+        journal.close();
+        Files.writeString(path(FILE + ".journal"), "{\"op\":\"DEL",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = reopen(Long.MAX_VALUE);
+        journal.appendPut(transaction("b", 20));
+
+        assertEquals(List.of("a", "b"), ids(reopen(Long.MAX_VALUE).load()));
+    }
+
+    @Test
+    public void skipsCorruptLineAndReplaysTheRest() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        journal.load();
+        journal.appendPut(transaction("a", 10));
+        journal.close();
+        Files.writeString(path(FILE + ".journal"), "not json\n",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal = reopen(Long.MAX_VALUE);
+        journal.load();
+        journal.appendPut(transaction("b", 20));
+
+        assertEquals(List.of("a", "b"), ids(reopen(Long.MAX_VALUE).load()));
+    }
+
+    @Test
+    public void compactionWritesSnapshotAndDropsJournal() throws Exception {
+        journal = open(1);
+        journal.load();
+        for (int i = 0; i < 20; i++) {
+            Transaction t = transaction("t" + i, i);
+            state.put(t.getId(), t);
+            journal.appendPut(t);
+        }
+        state.remove("t3");
+        journal.appendDelete("t3");
+        // 等待后台压缩写完快照
+        journal.close();
+
+        assertTrue(Files.exists(path(FILE)));
+        assertFalse(Files.exists(path(FILE + ".journal.old")));
+
+        List<Transaction> loaded = reopen(Long.MAX_VALUE).load();
+        assertEquals(new ArrayList<>(state.keySet()), ids(loaded));
+        assertNull(find(loaded, "t3"));
+        assertEquals(7, find(loaded, "t7").getAmount(), 0);
+    }
+
+    @Test
+    public void replaysRotatedJournalLeftByInterruptedCompaction() throws Exception {
+        journal = open(Long.MAX_VALUE);
+        journal.load();
+        journal.appendPut(transaction("a", 10));
+        journal.appendPut(transaction("b", 20));
+        journal.close();
+        // 轮转后、快照写完前崩溃：只剩轮转日志
+        Files.move(path(FILE + ".journal"), path(FILE + ".journal.old"));
+
+        journal = reopen(Long.MAX_VALUE);
+        journal.load();
+        journal.appendDelete("a");
+        journal.close();
+
+        assertEquals(List.of("b"), ids(reopen(Long.MAX_VALUE).load()));
+    }
+
+    @Test
+    public void failedLoadIsNotStaleUntilFilesChange() throws Exception {
+        Files.writeString(path(FILE), "[{\"id\":", StandardCharsets.UTF_8);
+        journal = open(Long.MAX_VALUE);
+        try {
+            journal.load();
+            fail("损坏的快照应当加载失败");
+        } catch (Exception expected) {
+            // 预期失败
+        }
+        assertFalse(journal.isStale());
+
+        Files.writeString(path(FILE), "[]", StandardCharsets.UTF_8);
+        assertTrue(journal.isStale());
+    }
+
+    private TransactionJournal open(long threshold) {
+        return new TransactionJournal(storage, FILE, gson, () -> new ArrayList<>(state.values()), threshold);
+    }
+
+    private TransactionJournal reopen(long threshold) {
+        journal.close();
+        journal = open(threshold);
+        return journal;
+    }
+
+    private Path path(String fileName) {
+        return folder.getRoot().toPath().resolve(fileName);
+    }
+
+    static Transaction transaction(String id, double amount) {
+        Transaction t = new Transaction("u1", Transaction.TransactionType.EXPENSE, amount, "food", "desc " + id);
+        t.setId(id);
+        t.setDate(LocalDateTime.of(2024, 3, 15, 12, 30));
+        return t;
+    }
+
+    private static List<String> ids(List<Transaction> transactions) {
+        List<String> ids = new ArrayList<>();
+        for (Transaction t : transactions) {
+            ids.add(t.getId());
+        }
+        return ids;
+    }
+
+    private static Transaction find(List<Transaction> transactions, String id) {
+        for (Transaction t : transactions) {
+            if (t.getId().equals(id)) return t;
+        }
+        return null;
+    }
+
+    static Gson gson() {
+        JsonSerializer<LocalDateTime> lts = (src, typeOfSrc, context) -> new JsonPrimitive(src.toString());
+        JsonDeserializer<LocalDateTime> ltd = (json, typeOfT, context) -> LocalDateTime.parse(json.getAsString());
+        return new GsonBuilder().registerTypeAdapter(LocalDateTime.class, lts)
+                .registerTypeAdapter(LocalDateTime.class, ltd).create();
+    }
+}
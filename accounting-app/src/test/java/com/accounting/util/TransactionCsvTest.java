@@ -0,0 +1,131 @@
+package com.accounting.util;
+
+import com.accounting.model.Transaction;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RFC 4180 引号规则：写入器只在必要时加引号，导入器能读回写入器的输出以及手写的带引号字段
+ */
+public class TransactionCsvTest {
+
+    @Test
+    public void quotesOnlyFieldsThatNeedIt() throws IOException {
+        assertEquals("plain", descriptionField("plain"));
+        assertEquals("\"a,b\"", descriptionField("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", descriptionField("say \"hi\""));
+        assertEquals("\"two\r\nlines\"", descriptionField("two\r\nlines"));
+        assertEquals("\"lf\nonly\"", descriptionField("lf\nonly"));
+        assertEquals("\" padded \"", descriptionField(" padded "));
+        assertEquals("\"tab\t\"", descriptionField("tab\t"));
+        assertEquals("中文描述", descriptionField("中文描述"));
+        assertEquals("", descriptionField(""));
+        assertEquals("", descriptionField(null));
+    }
+
+    @Test
+    public void writesHeaderAndCrlfLineEndings() throws IOException {
+        StringWriter out = new StringWriter();
+        TransactionCsvWriter writer = new TransactionCsvWriter(out);
+        writer.writeHeader();
+        Transaction t = transaction("id-1", "x");
+        t.setTags("a,b");
+        writer.write(t);
+        assertEquals(TransactionCsvWriter.HEADER + "\r\n"
+                + "id-1,u1,EXPENSE,12.5,food,x,2024-03-15T12:30,\"a,b\"\r\n", out.toString());
+    }
+
+    @Test
+    public void importsWhatTheWriterWrites() throws IOException {
+        String[] descriptions = {"plain", "a,b", "say \"hi\"", "\"", "\"\"", ",", "two\r\nlines", "lf\nonly",
+            " padded ", "中文,描述", "", "trailing,\"quote\""};
+        List<Transaction> written = new ArrayList<>();
+        for (int i = 0; i < descriptions.length; i++) {
+            Transaction t = transaction("id-" + i, descriptions[i]);
+            t.setAmount(i * 1.25);
+            t.setTags(i % 2 == 0 ? "x,\"y\"" : null);
+            written.add(t);
+        }
+        StringWriter out = new StringWriter();
+        TransactionCsvWriter writer = new TransactionCsvWriter(out);
+        writer.writeHeader();
+        written.forEach(writer);
+
+        List<Transaction> read = new ArrayList<>();
+        CsvImportResult result = new TransactionCsvImporter(5, 3)
+                .run(new StringReader(out.toString()), read::addAll, processed -> { });
+        assertEquals(0, result.getFailed());
+        assertEquals(written.size(), result.getImported());
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            Transaction expected = written.get(i);
+            Transaction actual = read.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getUserId(), actual.getUserId());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getAmount(), actual.getAmount(), 0);
+            assertEquals(expected.getCategoryId(), actual.getCategoryId());
+            // 引号内的 CRLF 读回为 \n
+            assertEquals(expected.getDescription().replace("\r\n", "\n"), actual.getDescription());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getTags(), actual.getTags());
+        }
+    }
+
+    @Test
+    public void importsHandWrittenQuotedFieldsAndReportsBadRows() throws IOException {
+        String csv = TransactionCsvWriter.HEADER + "\r\n"
+                + "a,u1,INCOME,10,,\"multi\r\nline, with \"\"quotes\"\"\",2024-01-02T03:04,\r\n"
+                + "b,u1,EXPENSE,not-a-number,food,x,2024-01-02T03:04\r\n"
+                + "\"c\",\"u1\",\"EXPENSE\",\"2.5\",\"food\",\"\",\"2024-01-02T03:04:05\"\r\n"
+                + "\r\n"
+                + "d,u1,LOAN,1,food,x,2024-01-02T03:04\n"
+                + "e,u1,EXPENSE,1,food,x\n";
+        List<Transaction> read = new ArrayList<>();
+        CsvImportResult result = new TransactionCsvImporter(2, 2)
+                .run(new StringReader(csv), read::addAll, processed -> { });
+
+        assertEquals(2, result.getImported());
+        assertEquals(3, result.getFailed());
+        assertEquals("a", read.get(0).getId());
+        assertEquals("multi\nline, with \"quotes\"", read.get(0).getDescription());
+        assertNull(read.get(0).getCategoryId());
+        assertNull(read.get(0).getTags());
+        assertEquals("c", read.get(1).getId());
+        assertEquals("", read.get(1).getDescription());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 5), read.get(1).getDate());
+
+        List<CsvImportResult.RowError> errors = result.getErrors();
+        assertEquals(4, errors.get(0).getLine());
+        assertTrue(errors.get(0).getMessage(), errors.get(0).getMessage().startsWith("金额格式错误"));
+        assertTrue(errors.get(1).getMessage(), errors.get(1).getMessage().startsWith("未知的交易类型"));
+        assertTrue(errors.get(2).getMessage(), errors.get(2).getMessage().startsWith("列数不足"));
+    }
+
+    private static String descriptionField(String description) throws IOException {
+        StringWriter out = new StringWriter();
+        new TransactionCsvWriter(out).write(transaction("id", description));
+        String line = out.toString();
+        String prefix = "id,u1,EXPENSE,12.5,food,";
+        String suffix = ",2024-03-15T12:30,\r\n";
+        assertTrue(line, line.startsWith(prefix) && line.endsWith(suffix));
+        return line.substring(prefix.length(), line.length() - suffix.length());
+    }
+
+    private static Transaction transaction(String id, String description) {
+        Transaction t = new Transaction("u1", Transaction.TransactionType.EXPENSE, 12.5, "food", description);
+        t.setId(id);
+        t.setDate(LocalDateTime.of(2024, 3, 15, 12, 30));
+        return t;
+    }
+}